@@ -0,0 +1,391 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Block based compression engines behind Compressor's levels
+ * The input is cut into BLOCK_SIZE byte blocks and each block is coded by one of three strategies:
+ *   STATIC:  one code table (trained on the first block, or given) stored once in the stream header and reused by
+ *            every block, so blocks build no codes and decode through the table's cached single lookup decode table
+ *   HUFFMAN: a length limited Huffman code built for each block (HuffmanEncoder's self-contained messages)
+ *   CONTEXT: each byte is routed by the class of the byte before it (vowel, consonant, capital, space, newline, digit,
+ *            punctuation, other) into one of CONTEXTS sub-streams, each with its own per-block Huffman code
+ *
+ * Stream format: "HBLK", version byte, strategy byte, for STATIC the HuffmanDictionary record, then per block its
+ * compressed length (int), original length (int, at most BLOCK_SIZE) and payload, and finally a compressed length of 0
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class BlockCodec {
+    public static final int BLOCK_SIZE = 128 * 1024;  //original bytes per block
+    public static final int VERSION = 1;
+    static final int CONTEXTS = 8;                    //number of previous byte classes in the CONTEXT strategy
+    private static final byte[] MAGIC = {'H', 'B', 'L', 'K'};
+    private static final byte[] CONTEXT_OF = new byte[256];  //class of each possible previous byte
+    static final int MIN_AUTO_SAMPLE = 32 * 1024;            //smallest sample the auto strategy choice times engines on
+    static final int MAX_AUTO_SAMPLE = 4 * BLOCK_SIZE;       //largest sample, for big files
+    private static final int WARMUP_BYTES = 256 * 1024;      //untimed bytes each engine codes before its trial is timed
+    private static final int TRIAL_REPEATS = 2;              //timed runs per strategy when choosing automatically
+
+    /**
+     * Available engines, from fastest to strongest
+     */
+    public enum Strategy { STATIC, HUFFMAN, CONTEXT }
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int context;
+            if ("aeiou".indexOf(b) >= 0) context = 0;
+            else if (b >= 'a' && b <= 'z') context = 1;
+            else if (b >= 'A' && b <= 'Z') context = 2;
+            else if (b == ' ') context = 3;
+            else if (b == '\n' || b == '\r' || b == '\t') context = 4;
+            else if (b >= '0' && b <= '9') context = 5;
+            else if (".,;:!?".indexOf(b) >= 0) context = 6;
+            else context = 7;
+            CONTEXT_OF[b] = (byte) context;
+        }
+    }
+
+    private final HuffmanEncoder encoder = new HuffmanEncoder();
+    private final HuffmanDecoder decoder = new HuffmanDecoder();
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] payload = new byte[CONTEXTS * HuffmanEncoder.maxCompressedLength(BLOCK_SIZE)];
+    private final ByteBuffer payloadBuffer = ByteBuffer.wrap(payload);
+    private final ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+    private final byte[][] split = new byte[CONTEXTS][BLOCK_SIZE];  //CONTEXT sub-streams of the current block
+    private final ByteBuffer[] splitBuffers = new ByteBuffer[CONTEXTS];
+    private final int[] splitLength = new int[CONTEXTS];
+    private final int[] taken = new int[CONTEXTS];  //bytes re-interleaved from each sub-stream so far
+    private final double[] trialMBps = new double[Strategy.values().length];   //results of the last choose()
+    private final double[] trialRatio = new double[Strategy.values().length];
+
+    /**
+     * Constructs BlockCodec (each instance owns its buffers, so use one per thread)
+     */
+    public BlockCodec() {
+        for (int c = 0; c < CONTEXTS; c++) splitBuffers[c] = ByteBuffer.wrap(split[c]);
+    }
+
+    /**
+     * Strategy used for a compression level
+     *
+     * @param level 1 (fastest) to 9 (strongest)
+     * @return STATIC for 1-3, HUFFMAN for 4-6, CONTEXT for 7-9
+     */
+    public static Strategy forLevel(int level) {
+        if (level < 1 || level > 9) throw new IllegalArgumentException("Level must be 1-9, was " + level);
+        return level <= 3 ? Strategy.STATIC : level <= 6 ? Strategy.HUFFMAN : Strategy.CONTEXT;
+    }
+
+    /**
+     * Builds a STATIC table from the byte frequencies of a sample
+     *
+     * @param sample Array holding the sample
+     * @param len    Number of sample bytes
+     * @return Table with a code for every byte value
+     */
+    static HuffmanDictionary trainTable(byte[] sample, int len) {
+        long[] counts = new long[256];
+        for (int i = 0; i < len; i++) counts[sample[i] & 0xFF]++;
+        return HuffmanDictionary.fromCounts(0, counts);
+    }
+
+    /**
+     * Compresses all of 'in' to 'out' with one strategy
+     *
+     * @param in       Original bytes (read to the end, not closed)
+     * @param out      Stream to write the compressed stream to (flushed, not closed)
+     * @param strategy Engine to code blocks with
+     * @param table    STATIC table to use, or null to train it on the first block (ignored by other strategies)
+     * @throws IOException Possible Exception when reading/writing
+     */
+    public void compress(InputStream in, OutputStream out, Strategy strategy, HuffmanDictionary table) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 2 * BLOCK_SIZE));
+        int len = in.readNBytes(block, 0, BLOCK_SIZE);
+        if (strategy == Strategy.STATIC && table == null) table = trainTable(block, len);
+        writeHeader(data, strategy, table);
+        writeBlocks(in, data, strategy, table, len);
+    }
+
+    /**
+     * Compresses all of 'in' to 'out' with the strategy that best fits a target (see choose())
+     * The engines are tried on the first 'sampleSize' bytes, and the chosen engine's trial output for them is written
+     * as is, so the sample is not coded again
+     *
+     * @param in         Original bytes (read to the end, not closed)
+     * @param out        Stream to write the compressed stream to (flushed, not closed)
+     * @param sampleSize Number of bytes to try the engines on (see autoSampleSize())
+     * @param minMBps    Required compression speed in MB/s, or 0 for none
+     * @param maxRatio   Required compressed/original size ratio, or 0 for none
+     * @param table      STATIC table to use, or null to train it on the sample's first block
+     * @return Chosen strategy
+     * @throws IOException Possible Exception when reading/writing
+     */
+    public Strategy compressAuto(InputStream in, OutputStream out, int sampleSize, double minMBps, double maxRatio,
+                                 HuffmanDictionary table) throws IOException {
+        byte[] sample = in.readNBytes(sampleSize);
+        if (table == null) table = trainTable(sample, Math.min(sample.length, BLOCK_SIZE));
+        ByteArrayOutputStream[] trialOutput = new ByteArrayOutputStream[Strategy.values().length];
+        Strategy strategy = choose(sample, sample.length, minMBps, maxRatio, table, trialOutput);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 2 * BLOCK_SIZE));
+        writeHeader(data, strategy, table);
+        trialOutput[strategy.ordinal()].writeTo(data);
+        writeBlocks(in, data, strategy, table, sample.length == sampleSize ? in.readNBytes(block, 0, BLOCK_SIZE) : 0);
+        return strategy;
+    }
+
+    /**
+     * Number of bytes compressAuto() should try the engines on: a quarter of the file, within
+     * MIN_AUTO_SAMPLE..MAX_AUTO_SAMPLE, so small files don't spend most of their time in trials
+     *
+     * @param fileSize Size of the original in bytes
+     * @return Sample size in bytes
+     */
+    public static int autoSampleSize(long fileSize) {
+        return (int) Math.max(MIN_AUTO_SAMPLE, Math.min(MAX_AUTO_SAMPLE, fileSize / 4));
+    }
+
+    /**
+     * Size of the stream header written for a strategy
+     *
+     * @param strategy Engine the stream is coded with
+     * @return Header bytes, including the STATIC table
+     */
+    static int headerSize(Strategy strategy) {
+        return MAGIC.length + 2 + (strategy == Strategy.STATIC ? HuffmanDictionary.RECORD_SIZE : 0);
+    }
+
+    /**
+     * Writes the stream header
+     */
+    private static void writeHeader(DataOutputStream data, Strategy strategy, HuffmanDictionary table) throws IOException {
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte(strategy.ordinal());
+        if (strategy == Strategy.STATIC) table.writeTo(data);
+    }
+
+    /**
+     * Codes the 'len' bytes already in 'block' and then the rest of 'in' as blocks, followed by the end marker
+     */
+    private void writeBlocks(InputStream in, DataOutputStream data, Strategy strategy, HuffmanDictionary table, int len)
+            throws IOException {
+        while (len > 0) {
+            int size = encodeBlock(strategy, table, block, len);
+            data.writeInt(size);
+            data.writeInt(len);
+            data.write(payload, 0, size);
+            len = in.readNBytes(block, 0, BLOCK_SIZE);
+        }
+        data.writeInt(0);
+        data.flush();
+    }
+
+    /**
+     * Decompresses a stream written by compress()
+     *
+     * @param in  Compressed stream (read up to its end marker, not closed)
+     * @param out Stream to write the original bytes to (flushed, not closed)
+     * @throws IOException If the stream is corrupt or can't be read/written
+     */
+    public void decompress(InputStream in, OutputStream out) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 2 * BLOCK_SIZE));
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) throw new IOException("Not a block compressed stream");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported block stream version " + version);
+        int ordinal = data.readUnsignedByte();
+        if (ordinal >= Strategy.values().length) throw new IOException("Unknown strategy " + ordinal);
+        Strategy strategy = Strategy.values()[ordinal];
+        HuffmanDictionary table = strategy == Strategy.STATIC ? HuffmanDictionary.readFrom(data, "block stream header") : null;
+        int size;
+        while ((size = data.readInt()) != 0) {
+            int len = data.readInt();
+            if (size < 0 || size > payload.length || len <= 0 || len > BLOCK_SIZE) {
+                throw new IOException("Corrupt block header (" + size + " compressed, " + len + " original bytes)");
+            }
+            data.readFully(payload, 0, size);
+            payloadBuffer.clear().limit(size);
+            decodeBlock(strategy, table, len);
+            out.write(block, 0, len);
+        }
+        out.flush();
+    }
+
+    /**
+     * Codes one block into 'payload'
+     *
+     * @return Number of payload bytes
+     */
+    private int encodeBlock(Strategy strategy, HuffmanDictionary table, byte[] src, int len) {
+        payloadBuffer.clear();
+        switch (strategy) {
+            case STATIC:
+                return encoder.compress(src, 0, len, payloadBuffer, table);
+            case HUFFMAN:
+                return encoder.compress(src, 0, len, payloadBuffer);
+            default:
+                //route each byte to the sub-stream of its predecessor's class, then code each sub-stream on its own
+                for (int c = 0; c < CONTEXTS; c++) splitLength[c] = 0;
+                int previous = 0;
+                for (int i = 0; i < len; i++) {
+                    int c = CONTEXT_OF[previous];
+                    split[c][splitLength[c]++] = src[i];
+                    previous = src[i] & 0xFF;
+                }
+                int size = 0;
+                for (int c = 0; c < CONTEXTS; c++) size += encoder.compress(split[c], 0, splitLength[c], payloadBuffer);
+                return size;
+        }
+    }
+
+    /**
+     * Decodes the block in 'payloadBuffer' into 'block'
+     */
+    private void decodeBlock(Strategy strategy, HuffmanDictionary table, int len) throws IOException {
+        blockBuffer.clear();
+        if (strategy != Strategy.CONTEXT) {
+            if (HuffmanDecoder.decompressedLength(payloadBuffer) > BLOCK_SIZE) throw new IOException("Corrupt block");
+            if (decoder.decompress(payloadBuffer, blockBuffer, table) != len) throw new IOException("Block length mismatch");
+            return;
+        }
+        //decode every sub-stream, then re-interleave them following the same previous byte classes as the encoder
+        for (int c = 0; c < CONTEXTS; c++) {
+            splitBuffers[c].clear();
+            if (HuffmanDecoder.decompressedLength(payloadBuffer) > BLOCK_SIZE) throw new IOException("Corrupt sub-stream");
+            splitLength[c] = decoder.decompress(payloadBuffer, splitBuffers[c]);
+        }
+        for (int c = 0; c < CONTEXTS; c++) taken[c] = 0;
+        int previous = 0;
+        for (int i = 0; i < len; i++) {
+            int c = CONTEXT_OF[previous];
+            if (taken[c] >= splitLength[c]) throw new EOFException("Sub-stream " + c + " ran out");
+            block[i] = split[c][taken[c]++];
+            previous = block[i] & 0xFF;
+        }
+    }
+
+    /**
+     * Picks the strategy that best fits a target by trying each one on a sample
+     * With a ratio target, the fastest strategy reaching it wins; with a speed target, the smallest output reaching it;
+     * if no strategy reaches the target, the closest one (smallest or fastest) is used; with no target, the smallest
+     *
+     * @param sample   Array holding the first bytes of the input
+     * @param len      Number of sample bytes
+     * @param minMBps  Required compression speed in MB/s, or 0 for none
+     * @param maxRatio Required compressed/original size ratio, or 0 for none
+     * @return Chosen strategy
+     */
+    public Strategy choose(byte[] sample, int len, double minMBps, double maxRatio) {
+        HuffmanDictionary table = trainTable(sample, Math.min(len, BLOCK_SIZE));
+        return choose(sample, len, minMBps, maxRatio, table, new ByteArrayOutputStream[Strategy.values().length]);
+    }
+
+    /**
+     * Speeds measured by the last choose() or compressAuto()
+     *
+     * @return Compression speed in MB/s of each strategy, indexed by Strategy.ordinal()
+     */
+    public double[] getTrialMBps() {
+        return trialMBps.clone();
+    }
+
+    /**
+     * Ratios measured by the last choose() or compressAuto()
+     *
+     * @return Compressed/original size of each strategy's whole stream, indexed by Strategy.ordinal()
+     *         (an empty input counts as 1 byte)
+     */
+    public double[] getTrialRatios() {
+        return trialRatio.clone();
+    }
+
+    /**
+     * Picks the strategy that best fits a target, keeping each strategy's coded blocks of the sample
+     * Each engine first codes WARMUP_BYTES untimed, so the JIT has compiled it before it is timed; only the block
+     * coding itself is timed, best of TRIAL_REPEATS runs
+     *
+     * @param trialOutput Filled with each strategy's block records (compressed length, original length, payload)
+     */
+    private Strategy choose(byte[] sample, int len, double minMBps, double maxRatio, HuffmanDictionary table,
+                            ByteArrayOutputStream[] trialOutput) {
+        Strategy[] strategies = Strategy.values();
+        double[] mbps = new double[strategies.length];
+        double[] ratio = new double[strategies.length];
+        long[] best = new long[strategies.length];
+        DataOutputStream[] records = new DataOutputStream[strategies.length];
+        //warm every engine up before timing any, then time them in turns, so neither JIT state nor trial order
+        //favours one of them
+        int warmupLen = Math.min(len, BLOCK_SIZE);
+        System.arraycopy(sample, 0, block, 0, warmupLen);
+        for (Strategy strategy : strategies) {
+            for (long warmed = 0; warmupLen > 0 && warmed < WARMUP_BYTES; warmed += warmupLen) {
+                encodeBlock(strategy, table, block, warmupLen);
+            }
+            int i = strategy.ordinal();
+            trialOutput[i] = new ByteArrayOutputStream(len / 2 + 64);
+            records[i] = new DataOutputStream(trialOutput[i]);
+            best[i] = Long.MAX_VALUE;
+        }
+        for (int r = 0; r < TRIAL_REPEATS; r++) {
+            boolean last = r == TRIAL_REPEATS - 1;
+            for (Strategy strategy : strategies) {
+                int i = strategy.ordinal();
+                long elapsed = 0;
+                for (int off = 0; off < len; off += BLOCK_SIZE) {
+                    int n = Math.min(BLOCK_SIZE, len - off);
+                    System.arraycopy(sample, off, block, 0, n);
+                    long start = System.nanoTime();
+                    int blockSize = encodeBlock(strategy, table, block, n);
+                    elapsed += System.nanoTime() - start;
+                    if (last) {
+                        try {
+                            records[i].writeInt(blockSize);
+                            records[i].writeInt(n);
+                            records[i].write(payload, 0, blockSize);
+                        } catch (IOException e) {
+                            //ByteArrayOutputStream does not throw
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                }
+                best[i] = Math.min(best[i], elapsed);
+            }
+        }
+        for (int i = 0; i < strategies.length; i++) {
+            mbps[i] = len / (double) Math.max(best[i], 1) * 1e9 / (1 << 20);
+            //whole stream size: header (with the STATIC table), block records and the end marker, so a small input
+            //isn't sent to STATIC when its table costs more than it saves
+            long streamSize = headerSize(strategies[i]) + trialOutput[i].size() + 4;
+            ratio[i] = streamSize / (double) Math.max(len, 1);
+            trialMBps[i] = mbps[i];
+            trialRatio[i] = ratio[i];
+        }
+        int chosen = -1;
+        for (int i = 0; i < strategies.length; i++) {
+            boolean meets = maxRatio > 0 ? ratio[i] <= maxRatio : mbps[i] >= minMBps;
+            if (!meets) continue;
+            //among strategies meeting the target, optimize the other dimension
+            if (chosen < 0 || (maxRatio > 0 ? mbps[i] > mbps[chosen] : ratio[i] < ratio[chosen])) chosen = i;
+        }
+        if (chosen < 0) {
+            //nothing meets the target, take the closest
+            chosen = 0;
+            for (int i = 1; i < strategies.length; i++) {
+                if (maxRatio > 0 ? ratio[i] < ratio[chosen] : mbps[i] > mbps[chosen]) chosen = i;
+            }
+        }
+        return strategies[chosen];
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+/**
+ * Array based Huffman code builder used by the reusable encoder/decoder contexts
+ * Computes length limited code lengths and canonical codes without creating BinaryTree/TreeData nodes,
+ * so once constructed it allocates nothing no matter how many times it is used
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+final class CodeLengths {
+    static final int MAX_BITS_LIMIT = 30;  //longest code length any caller may ask for
+
+    private final long[] sorted;   //(frequency << 32 | symbol) of each used symbol, sorted by frequency
+    private final long[] weight;   //weight of each leaf (0..m-1) and internal node (m..2m-2)
+    private final int[] parent;    //parent of each node, later reused to hold each node's depth
+    private final int[] scaled;    //working copy of frequencies, halved when codes come out too long
+    private final int[] blCount = new int[MAX_BITS_LIMIT + 1];   //number of codes of each length
+    private final int[] nextCode = new int[MAX_BITS_LIMIT + 1];  //next canonical code of each length
+
+    /**
+     * Constructs builder with scratch space for alphabets of up to 'maxSymbols' symbols
+     *
+     * @param maxSymbols Largest alphabet size this builder will be used for
+     */
+    CodeLengths(int maxSymbols) {
+        sorted = new long[maxSymbols];
+        weight = new long[2 * maxSymbols];
+        parent = new int[2 * maxSymbols];
+        scaled = new int[maxSymbols];
+    }
+
+    /**
+     * Computes Huffman code lengths for symbols 0..n-1, none longer than maxBits
+     * If the optimal code is too long, frequencies are halved (keeping them non-zero) and the code rebuilt until it fits
+     *
+     * @param freq    Frequency of each symbol (0 for unused symbols)
+     * @param n       Number of symbols
+     * @param maxBits Longest code length allowed (2^maxBits must be at least the number of used symbols)
+     * @param lengths Filled with each symbol's code length (0 for unused symbols)
+     * @return Longest code length assigned (0 if no symbol is used)
+     */
+    int build(int[] freq, int n, int maxBits, int[] lengths) {
+        System.arraycopy(freq, 0, scaled, 0, n);
+        while (true) {
+            int m = 0;
+            for (int s = 0; s < n; s++) {
+                lengths[s] = 0;
+                if (scaled[s] > 0) sorted[m++] = ((long) scaled[s] << 32) | s;
+            }
+            if (m == 0) return 0;
+            //edge if there is only 1 distinct symbol, it still needs a 1 bit code
+            if (m == 1) {
+                lengths[(int) sorted[0]] = 1;
+                return 1;
+            }
+            Arrays.sort(sorted, 0, m);
+            for (int i = 0; i < m; i++) weight[i] = sorted[i] >>> 32;
+            //two queue Huffman: leaves come out of 'sorted' in order, and combined nodes are created in non-decreasing
+            //weight order, so the two lightest trees are always at the front of one of the two queues
+            int leaf = 0, inner = m;
+            for (int node = m; node < 2 * m - 1; node++) {
+                int a = (leaf < m && (inner >= node || weight[leaf] <= weight[inner])) ? leaf++ : inner++;
+                int b = (leaf < m && (inner >= node || weight[leaf] <= weight[inner])) ? leaf++ : inner++;
+                weight[node] = weight[a] + weight[b];
+                parent[a] = node;
+                parent[b] = node;
+            }
+            //parents always have higher indices, so walking down from the root each node's parent depth is already known
+            int root = 2 * m - 2;
+            parent[root] = 0;
+            for (int node = root - 1; node >= 0; node--) parent[node] = parent[parent[node]] + 1;
+            int maxLength = 0;
+            for (int i = 0; i < m; i++) {
+                lengths[(int) sorted[i]] = parent[i];
+                maxLength = Math.max(maxLength, parent[i]);
+            }
+            if (maxLength <= maxBits) return maxLength;
+            //codes too long: flatten the distribution and try again
+            for (int s = 0; s < n; s++) if (scaled[s] > 0) scaled[s] = 1 + (scaled[s] >> 1);
+        }
+    }
+
+    /**
+     * Assigns canonical codes (shorter codes first, ties broken by symbol) from code lengths
+     *
+     * @param lengths Code length of each symbol (0 for unused symbols)
+     * @param n       Number of symbols
+     * @param codes   Filled with each symbol's code, right aligned
+     * @return false if the lengths are over-subscribed (cannot form a prefix code), else true
+     */
+    boolean assignCodes(int[] lengths, int n, int[] codes) {
+        Arrays.fill(blCount, 0);
+        for (int s = 0; s < n; s++) {
+            if (lengths[s] < 0 || lengths[s] > MAX_BITS_LIMIT) return false;
+            blCount[lengths[s]]++;
+        }
+        blCount[0] = 0;
+        int code = 0;
+        for (int bits = 1; bits <= MAX_BITS_LIMIT; bits++) {
+            code = (code + blCount[bits - 1]) << 1;
+            nextCode[bits] = code;
+        }
+        for (int s = 0; s < n; s++) {
+            int len = lengths[s];
+            if (len == 0) continue;
+            codes[s] = nextCode[len]++;
+            if (codes[s] >= 1 << len) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fills a single lookup decode table: indexing it with the next 'tableBits' bits of input gives
+     * (symbol << 8 | code length) of the code those bits start with, or 0 for bits no code starts with
+     *
+     * @param lengths   Code length of each symbol, none longer than tableBits
+     * @param codes     Canonical code of each symbol, from assignCodes
+     * @param n         Number of symbols
+     * @param tableBits Number of bits the table is indexed with
+     * @param table     Table of 2^tableBits entries to fill
+     */
+    static void fillDecodeTable(int[] lengths, int[] codes, int n, int tableBits, int[] table) {
+        Arrays.fill(table, 0, 1 << tableBits, 0);
+        for (int s = 0; s < n; s++) {
+            int len = lengths[s];
+            if (len == 0) continue;
+            //every index whose leading 'len' bits are this code decodes to this symbol
+            int shift = tableBits - len;
+            int start = codes[s] << shift;
+            Arrays.fill(table, start, start + (1 << shift), (s << 8) | len);
+        }
+    }
+}
@@ -0,0 +1,467 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Huffman compression over Unicode code points instead of Java chars
+ * TreeData holds a char, so Compressor codes supplementary characters (emoji, CJK extensions) as two surrogate halves;
+ * here UTF-8 is decoded straight from the file's bytes and every code point is one symbol
+ * Code points are remapped through a sparse-to-dense table (the sorted alphabet of the file), so all coding arrays
+ * are sized by the number of distinct code points rather than by the Unicode range
+ * Bytes that are not valid UTF-8 become symbols RAW_BYTE_BASE + byte, so any file round trips exactly
+ *
+ * File format: "HCPT", version byte, number of symbols (long), alphabet size (varint),
+ * alphabet as varint code point gaps (ascending), one code length byte per alphabet entry,
+ * then the canonical Huffman bit codes, most significant bit first, zero padded to a whole byte
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class CodePointCompressor {
+    public static final int VERSION = 1;
+    static final int RAW_BYTE_BASE = 0x110000;   //first symbol past Unicode, for bytes that aren't valid UTF-8
+    private static final int MAX_CODE_LENGTH = 24;
+    private static final int FAST_BITS = 10;     //codes up to this long decode with one table lookup
+    private static final byte[] MAGIC = {'H', 'C', 'P', 'T'};
+
+    private final String filename;
+
+    /**
+     * Open addressing map from code point (sparse) to a dense int, without boxing
+     */
+    static final class SymbolMap {
+        private int[] keys;
+        private int[] values;
+        private int size;
+        private int shift = 32 - 10;  //32 - log2(keys.length)
+
+        /**
+         * Constructs empty map
+         */
+        SymbolMap() {
+            keys = new int[1024];
+            values = new int[1024];
+            Arrays.fill(keys, -1);
+        }
+
+        /**
+         * Slot of 'key', or of the empty slot where it would go
+         */
+        private int slot(int key) {
+            int mask = keys.length - 1;
+            //Fibonacci hashing: the top log2(capacity) bits of the product, so every slot is reachable at any size
+            int i = (key * 0x9E3779B9) >>> shift;
+            while (keys[i] != -1 && keys[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+
+        /**
+         * Gets the value for a key
+         *
+         * @param key Code point
+         * @return Its value, or -1 if absent
+         */
+        int get(int key) {
+            int i = slot(key);
+            return keys[i] == key ? values[i] : -1;
+        }
+
+        /**
+         * Gets the value for a key, adding it with value size() if absent
+         *
+         * @param key Code point
+         * @return Its value
+         */
+        int getOrAdd(int key) {
+            int i = slot(key);
+            if (keys[i] == key) return values[i];
+            keys[i] = key;
+            values[i] = size;
+            size++;
+            //keep the table at most half full
+            if (2 * size > keys.length) grow();
+            return size - 1;
+        }
+
+        /**
+         * Sets the value of a key already in the map
+         */
+        void set(int key, int value) {
+            values[slot(key)] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * Keys in the order they were added
+         *
+         * @return Array where index = value assigned by getOrAdd
+         */
+        int[] keysByValue() {
+            int[] result = new int[size];
+            for (int i = 0; i < keys.length; i++) if (keys[i] != -1) result[values[i]] = keys[i];
+            return result;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys, oldValues = values;
+            keys = new int[2 * oldKeys.length];
+            values = new int[2 * oldKeys.length];
+            shift--;
+            Arrays.fill(keys, -1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == -1) continue;
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Decodes UTF-8 from a byte stream into code points (or raw byte symbols for invalid sequences)
+     */
+    static final class Utf8Reader {
+        private final InputStream in;
+        private final byte[] buf = new byte[64 * 1024];
+        private int pos, limit;
+        private boolean eof;
+
+        Utf8Reader(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Makes sure at least 'n' bytes are buffered, unless the stream ends first
+         */
+        private void ensure(int n) throws IOException {
+            if (limit - pos >= n || eof) return;
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+            while (limit < n) {
+                int read = in.read(buf, limit, buf.length - limit);
+                if (read < 0) {
+                    eof = true;
+                    return;
+                }
+                limit += read;
+            }
+        }
+
+        /**
+         * Reads the next symbol
+         *
+         * @return Code point, RAW_BYTE_BASE + byte for a byte that doesn't start a valid sequence, or -1 at end of stream
+         */
+        int next() throws IOException {
+            ensure(4);
+            if (pos == limit) return -1;
+            int b0 = buf[pos] & 0xFF;
+            if (b0 < 0x80) {
+                pos++;
+                return b0;
+            }
+            int n, min, cp;
+            if (b0 >= 0xC2 && b0 <= 0xDF) {
+                n = 2;
+                min = 0x80;
+                cp = b0 & 0x1F;
+            } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+                n = 3;
+                min = 0x800;
+                cp = b0 & 0x0F;
+            } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+                n = 4;
+                min = 0x10000;
+                cp = b0 & 0x07;
+            } else {
+                pos++;
+                return RAW_BYTE_BASE + b0;
+            }
+            boolean valid = limit - pos >= n;
+            for (int i = 1; valid && i < n; i++) {
+                int b = buf[pos + i] & 0xFF;
+                valid = (b & 0xC0) == 0x80;
+                cp = (cp << 6) | (b & 0x3F);
+            }
+            //reject overlong forms, surrogates and values past Unicode so re-encoding gives back the same bytes
+            if (!valid || cp < min || cp > 0x10FFFF || (cp >= 0xD800 && cp <= 0xDFFF)) {
+                pos++;
+                return RAW_BYTE_BASE + b0;
+            }
+            pos += n;
+            return cp;
+        }
+    }
+
+    /**
+     * Constructs CodePointCompressor object
+     *
+     * @param filename Name of the original file as a String
+     */
+    public CodePointCompressor(String filename) {
+        this.filename = filename;
+    }
+
+    /**
+     * Compresses the original ('fileName'.txt) file into ('fileName'_compressed.txt)
+     * Reads the file twice: once to count code points, once to code them
+     *
+     * @param filePath Relative file path as a String
+     * @throws IOException Possible Exception when opening/reading/writing files
+     */
+    public void compressFile(String filePath) throws IOException {
+        String shortName = filePath.substring(0, filePath.length() - 4);
+        String outputFile = shortName + "_compressed.txt";
+        //first pass: count each distinct symbol, numbering them in order of appearance
+        SymbolMap map = new SymbolMap();
+        long[] counts = new long[1024];
+        long total = 0;
+        try (InputStream input = new FileInputStream(filename)) {
+            Utf8Reader reader = new Utf8Reader(input);
+            int cp;
+            while ((cp = reader.next()) != -1) {
+                int id = map.getOrAdd(cp);
+                if (id == counts.length) counts = Arrays.copyOf(counts, 2 * counts.length);
+                counts[id]++;
+                total++;
+            }
+        }
+        //sparse-to-dense remap: dense index = rank of the code point in the sorted alphabet
+        int n = map.size();
+        int[] byId = map.keysByValue();
+        int[] alphabet = byId.clone();
+        Arrays.sort(alphabet);
+        int[] freq = new int[n];
+        long max = 1;
+        for (int id = 0; id < n; id++) max = Math.max(max, counts[id]);
+        for (int id = 0; id < n; id++) {
+            int rank = Arrays.binarySearch(alphabet, byId[id]);
+            map.set(byId[id], rank);
+            //scale counts into int range, keeping every used symbol non-zero
+            freq[rank] = max <= Integer.MAX_VALUE / 2 ? (int) counts[id]
+                    : 1 + (int) ((double) counts[id] * (Integer.MAX_VALUE / 2 - 1) / max);
+        }
+        int[] lengths = new int[n];
+        int[] codes = new int[n];
+        CodeLengths builder = new CodeLengths(Math.max(n, 1));
+        builder.build(freq, n, MAX_CODE_LENGTH, lengths);
+        builder.assignCodes(lengths, n, codes);
+        //header
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+            output.write(MAGIC);
+            output.writeByte(VERSION);
+            output.writeLong(total);
+            writeVarint(output, n);
+            int previous = 0;
+            for (int cp : alphabet) {
+                writeVarint(output, cp - previous);
+                previous = cp;
+            }
+            for (int len : lengths) output.writeByte(len);
+            //second pass: write each symbol's code
+            try (InputStream input = new FileInputStream(filename)) {
+                Utf8Reader reader = new Utf8Reader(input);
+                long bitBuffer = 0;
+                int numBits = 0;
+                int cp;
+                while ((cp = reader.next()) != -1) {
+                    int s = map.get(cp);
+                    if (s < 0) throw new IOException("File changed while compressing");
+                    bitBuffer = (bitBuffer << lengths[s]) | codes[s];
+                    numBits += lengths[s];
+                    while (numBits >= 8) {
+                        numBits -= 8;
+                        output.write((int) (bitBuffer >>> numBits));
+                    }
+                }
+                if (numBits > 0) output.write((int) (bitBuffer << (8 - numBits)));
+            }
+        }
+        System.out.println("Compressed " + total + " code points over an alphabet of " + n);
+    }
+
+    /**
+     * Decompresses ('fileName'_compressed.txt) into ('fileName'_decompressed.txt), writing UTF-8 bytes directly
+     *
+     * @param filePath Relative file path as a String
+     * @throws IOException If the compressed file is corrupt or files can't be opened/read/written
+     */
+    public void decompressFile(String filePath) throws IOException {
+        String shortName = filePath.substring(0, filePath.length() - 4);
+        String inputFile = shortName + "_compressed.txt";
+        String outputFile = shortName + "_decompressed.txt";
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(inputFile)));
+             OutputStream output = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            byte[] magic = new byte[MAGIC.length];
+            input.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException(inputFile + " is not a code point compressed file");
+            int version = input.readUnsignedByte();
+            if (version != VERSION) throw new IOException("Unsupported code point file version " + version);
+            long total = input.readLong();
+            int n = readVarint(input);
+            if (n < 0 || n > RAW_BYTE_BASE + 256) throw new IOException("Corrupt alphabet size " + n);
+            int[] alphabet = new int[n];
+            int previous = 0;
+            for (int i = 0; i < n; i++) {
+                int gap = readVarint(input);
+                //the alphabet is strictly ascending: the first entry may be 0, every later gap is positive
+                if (gap < 0 || (i > 0 && gap == 0) || gap >= RAW_BYTE_BASE + 256 - previous) {
+                    throw new IOException("Corrupt alphabet entry " + i);
+                }
+                previous += gap;
+                alphabet[i] = previous;
+            }
+            int[] lengths = new int[n];
+            for (int i = 0; i < n; i++) {
+                lengths[i] = input.readUnsignedByte();
+                if (lengths[i] > MAX_CODE_LENGTH) throw new IOException("Code length " + lengths[i] + " is too long");
+            }
+            int[] codes = new int[n];
+            if (!new CodeLengths(Math.max(n, 1)).assignCodes(lengths, n, codes)) {
+                throw new IOException("Code lengths do not form a prefix code");
+            }
+            decodeSymbols(input, output, total, alphabet, lengths, codes);
+        }
+        System.out.println("Decompressed file is now closed");
+    }
+
+    /**
+     * Decodes 'total' symbols: codes up to FAST_BITS long with one table lookup, longer ones canonically bit by bit
+     */
+    private static void decodeSymbols(InputStream input, OutputStream output, long total,
+                                      int[] alphabet, int[] lengths, int[] codes) throws IOException {
+        int n = alphabet.length;
+        //fast table: (dense symbol << 8 | length) for every FAST_BITS prefix that starts with a short code
+        int[] fast = new int[1 << FAST_BITS];
+        //canonical decoding data for long codes: symbols sorted by (length, symbol) and how many codes of each length
+        int[] count = new int[MAX_CODE_LENGTH + 1];
+        for (int s = 0; s < n; s++) {
+            if (lengths[s] == 0) continue;
+            count[lengths[s]]++;
+            if (lengths[s] <= FAST_BITS) {
+                int shift = FAST_BITS - lengths[s];
+                Arrays.fill(fast, codes[s] << shift, (codes[s] + 1) << shift, (s << 8) | lengths[s]);
+            }
+        }
+        int[] offset = new int[MAX_CODE_LENGTH + 2];
+        for (int len = 1; len <= MAX_CODE_LENGTH; len++) offset[len + 1] = offset[len] + count[len];
+        int[] sorted = new int[n];
+        for (int s = 0; s < n; s++) if (lengths[s] > 0) sorted[offset[lengths[s]]++] = s;
+        //offset[len] now points past the codes of length len, shift back to their start
+        for (int len = MAX_CODE_LENGTH; len >= 1; len--) offset[len] = offset[len - 1];
+        offset[0] = 0;
+
+        long bitBuffer = 0;
+        int numBits = 0;
+        boolean eof = false;
+        byte[] utf8 = new byte[4];
+        for (long i = 0; i < total; i++) {
+            //keep at least MAX_CODE_LENGTH bits buffered while input lasts
+            while (numBits < MAX_CODE_LENGTH && !eof) {
+                int b = input.read();
+                if (b < 0) {
+                    eof = true;
+                } else {
+                    bitBuffer = (bitBuffer << 8) | b;
+                    numBits += 8;
+                }
+            }
+            int peek = numBits >= FAST_BITS
+                    ? (int) (bitBuffer >>> (numBits - FAST_BITS)) & ((1 << FAST_BITS) - 1)
+                    : (int) (bitBuffer << (FAST_BITS - numBits)) & ((1 << FAST_BITS) - 1);
+            int entry = fast[peek];
+            int symbol, len;
+            if (entry != 0) {
+                symbol = entry >>> 8;
+                len = entry & 0xFF;
+            } else {
+                //canonical decode: the first len-bit prefix that falls inside that length's code range
+                symbol = -1;
+                len = 0;
+                int code = 0, first = 0;
+                for (int l = 1; l <= MAX_CODE_LENGTH && l <= numBits; l++) {
+                    code = (code << 1) | (int) ((bitBuffer >>> (numBits - l)) & 1);
+                    if (code - first < count[l]) {
+                        symbol = sorted[offset[l] + code - first];
+                        len = l;
+                        break;
+                    }
+                    first = (first + count[l]) << 1;
+                }
+                if (symbol < 0) throw new IOException("Corrupt or truncated compressed file");
+            }
+            if (len > numBits) throw new EOFException("Compressed file is truncated");
+            numBits -= len;
+            writeSymbol(output, alphabet[symbol], utf8);
+        }
+    }
+
+    /**
+     * Writes one symbol as UTF-8 (or as its raw byte)
+     */
+    private static void writeSymbol(OutputStream output, int cp, byte[] utf8) throws IOException {
+        if (cp < 0x80) {
+            output.write(cp);
+        } else if (cp >= RAW_BYTE_BASE) {
+            output.write(cp - RAW_BYTE_BASE);
+        } else if (cp < 0x800) {
+            utf8[0] = (byte) (0xC0 | cp >>> 6);
+            utf8[1] = (byte) (0x80 | cp & 0x3F);
+            output.write(utf8, 0, 2);
+        } else if (cp < 0x10000) {
+            utf8[0] = (byte) (0xE0 | cp >>> 12);
+            utf8[1] = (byte) (0x80 | cp >>> 6 & 0x3F);
+            utf8[2] = (byte) (0x80 | cp & 0x3F);
+            output.write(utf8, 0, 3);
+        } else {
+            utf8[0] = (byte) (0xF0 | cp >>> 18);
+            utf8[1] = (byte) (0x80 | cp >>> 12 & 0x3F);
+            utf8[2] = (byte) (0x80 | cp >>> 6 & 0x3F);
+            utf8[3] = (byte) (0x80 | cp & 0x3F);
+            output.write(utf8, 0, 4);
+        }
+    }
+
+    private static void writeVarint(OutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarint(InputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.read();
+            if (b < 0) throw new EOFException("Compressed file is truncated");
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Corrupt varint in compressed file");
+    }
+
+    /**
+     * Hardcoded Driver to test code point compression/decompression
+     *
+     * @param args Command Line arguments (not used)
+     * @throws IOException compressFile and decompressFile could raise IOException
+     */
+    public static void main(String[] args) throws IOException {
+        String fileName = "inputs/helloTest.txt";
+        CodePointCompressor comp = new CodePointCompressor(fileName);
+        comp.compressFile(fileName);
+        comp.decompressFile(fileName);
+    }
+}
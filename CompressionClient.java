@@ -0,0 +1,208 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Client for CompressionServer, so scripts can compress/decompress through a warm server instead of running Driver
+ * One client is one connection and sends one request at a time
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class CompressionClient implements AutoCloseable {
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Server's answer to one request, with its timing
+     */
+    public static class Response {
+        public final byte status;         //CompressionServer.STATUS_OK, STATUS_BUSY or STATUS_ERROR
+        public final long queueNanos;     //time the request waited for a worker
+        public final long serviceNanos;   //time the worker spent on it
+        public final byte[] payload;      //result bytes, output file path, or error message
+
+        Response(byte status, long queueNanos, long serviceNanos, byte[] payload) {
+            this.status = status;
+            this.queueNanos = queueNanos;
+            this.serviceNanos = serviceNanos;
+            this.payload = payload;
+        }
+
+        /**
+         * Getter for whether the request succeeded
+         *
+         * @return true if status is STATUS_OK
+         */
+        public boolean isOk() {
+            return status == CompressionServer.STATUS_OK;
+        }
+
+        /**
+         * Payload decoded as text (file path or error message)
+         *
+         * @return Payload as a UTF-8 String
+         */
+        public String text() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Constructs CompressionClient connected to a server
+     *
+     * @param address Loopback InetSocketAddress or UnixDomainSocketAddress the server listens on
+     * @throws IOException Possible Exception when connecting
+     */
+    public CompressionClient(SocketAddress address) throws IOException {
+        channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        channel.connect(address);
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Compresses a message on the server
+     *
+     * @param message Bytes to compress
+     * @return Response whose payload is the compressed message
+     */
+    public Response compress(byte[] message) throws IOException {
+        return send(CompressionServer.OP_COMPRESS, message);
+    }
+
+    /**
+     * Decompresses a message on the server
+     *
+     * @param message Bytes produced by compress()
+     * @return Response whose payload is the original message
+     */
+    public Response decompress(byte[] message) throws IOException {
+        return send(CompressionServer.OP_DECOMPRESS, message);
+    }
+
+    /**
+     * Has the server compress 'fileName'.txt into 'fileName'_compressed.txt, as Compressor.compressFile does
+     *
+     * @param filePath Path of the original file, relative to the server's file root
+     * @return Response whose payload is the compressed file's path on the server
+     */
+    public Response compressFile(String filePath) throws IOException {
+        return send(CompressionServer.OP_COMPRESS_FILE, filePath.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Has the server decompress 'fileName'_compressed.txt into 'fileName'_decompressed.txt, as Compressor.decompressFile does
+     *
+     * @param filePath Path of the original file, relative to the server's file root
+     * @return Response whose payload is the decompressed file's path on the server
+     */
+    public Response decompressFile(String filePath) throws IOException {
+        return send(CompressionServer.OP_DECOMPRESS_FILE, filePath.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Sends one request and waits for its response
+     */
+    private Response send(byte op, byte[] payload) throws IOException {
+        out.writeByte(op);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+        byte status = in.readByte();
+        long queueNanos = in.readLong();
+        long serviceNanos = in.readLong();
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return new Response(status, queueNanos, serviceNanos, result);
+    }
+
+    /**
+     * Closes the connection
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Prints a response's status and timing
+     */
+    private static void report(String what, Response response) {
+        System.out.printf("%s: %s (queued %.3f ms, service %.3f ms)%n", what,
+                response.isOk() ? "ok" : response.status == CompressionServer.STATUS_BUSY ? "busy" : "error",
+                response.queueNanos / 1e6, response.serviceNanos / 1e6);
+        if (!response.isOk()) System.err.println(response.text());
+    }
+
+    /**
+     * Command line client
+     * Usage: CompressionClient [--port N | --socket path] file 'fileName'.txt    (compress + decompress + check, like Driver)
+     *        CompressionClient [--port N | --socket path] compress|decompress in out
+     *
+     * @param args Command line arguments
+     * @throws IOException Possible Exception when connecting or reading/writing local files
+     */
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), CompressionServer.DEFAULT_PORT);
+        int i = 0;
+        if (args.length > 1 && args[0].equals("--port")) {
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[1]));
+            i = 2;
+        } else if (args.length > 1 && args[0].equals("--socket")) {
+            address = UnixDomainSocketAddress.of(Path.of(args[1]));
+            i = 2;
+        }
+        if (args.length - i < 2) {
+            System.err.println("Usage: CompressionClient [--port N | --socket path] file <name.txt> | compress <in> <out> | decompress <in> <out>");
+            System.exit(2);
+        }
+        String command = args[i];
+        try (CompressionClient client = new CompressionClient(address)) {
+            Response response;
+            if (command.equals("file")) {
+                String filePath = args[i + 1];
+                response = client.compressFile(filePath);
+                report("compress " + filePath, response);
+                if (!response.isOk()) System.exit(1);
+                response = client.decompressFile(filePath);
+                report("decompress " + filePath, response);
+                if (!response.isOk()) System.exit(1);
+                //check that the decompressed and original files have identical content (the server reports its own
+                //path under its file root, which is also reachable from here since the server is local)
+                String decompressed = response.text();
+                String original = decompressed.substring(0, decompressed.length() - "_decompressed.txt".length()) + ".txt";
+                if (Driver.isEqual(new File(original).toPath(), new File(decompressed).toPath())) {
+                    System.out.println("\nOriginal and Decompressed are the same!");
+                } else {
+                    System.out.println("\nOriginal and Decompressed are not  the same :(");
+                    System.exit(1);
+                }
+                return;
+            }
+            if (args.length - i < 3 || !(command.equals("compress") || command.equals("decompress"))) {
+                System.err.println("Unknown command " + command);
+                System.exit(2);
+            }
+            byte[] input = Files.readAllBytes(Path.of(args[i + 1]));
+            response = command.equals("compress") ? client.compress(input) : client.decompress(input);
+            report(command + " " + args[i + 1], response);
+            if (!response.isOk()) System.exit(1);
+            Files.write(Path.of(args[i + 2]), response.payload);
+        }
+    }
+}
@@ -0,0 +1,486 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long running compression service, so many short jobs share one warmed up JVM instead of each paying startup and JIT
+ * Listens on a loopback TCP port or a Unix domain socket and runs requests on a bounded worker pool
+ * When all workers are busy and the queue is full, requests are turned away with STATUS_BUSY instead of piling up
+ * Inline payloads are only read once their bytes fit in the payload budget, and run only once their result's bytes
+ * fit as well, which stay reserved until the response is written, so requests and responses held for slow clients
+ * can't pin more than that much heap
+ * File requests are confined to the file root directory (no symbolic links) and run PipelinedCompressor, which uses
+ * three threads of its own per job, so at most fileJobs of them run at once; any process that can reach the socket
+ * can read and write .txt files under the root, so keep it to a directory meant for that
+ *
+ * Request:  op byte, payload length (int), payload (message bytes, or a UTF-8 file path for the file ops)
+ * Response: status byte, queue wait nanos (long), service nanos (long), payload length (int),
+ *           payload (result bytes, output file's path on the server, or error message)
+ * Each connection handles one request at a time; open more connections to have several in flight
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class CompressionServer {
+    public static final int DEFAULT_PORT = 7878;
+    public static final int MAX_PAYLOAD = 64 * 1024 * 1024;  //largest inline message accepted
+    public static final int DEFAULT_PAYLOAD_BUDGET = 4 * MAX_PAYLOAD;  //inline request and result bytes held in memory at once
+    public static final int MIN_PAYLOAD_BUDGET = MAX_PAYLOAD + HuffmanEncoder.maxCompressedLength(MAX_PAYLOAD);  //largest request plus its result
+
+    public static final byte OP_COMPRESS = 1;          //compress inline bytes with HuffmanEncoder
+    public static final byte OP_DECOMPRESS = 2;        //decompress inline bytes with HuffmanDecoder
+    public static final byte OP_COMPRESS_FILE = 3;     //compress 'fileName'.txt to 'fileName'_compressed.txt
+    public static final byte OP_DECOMPRESS_FILE = 4;   //decompress 'fileName'_compressed.txt to 'fileName'_decompressed.txt
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_BUSY = 1;   //rejected by admission control, try again later
+    public static final byte STATUS_ERROR = 2;  //request failed, payload is the error message
+
+    private final SocketAddress address;
+    private final ThreadPoolExecutor workers;      //runs the compression work
+    private final ThreadPoolExecutor connections;  //one thread per open connection, bounded
+    private volatile ServerSocketChannel server;
+    private Semaphore payloadBudget = new Semaphore(DEFAULT_PAYLOAD_BUDGET);  //bytes of inline payloads and results in memory
+    private Semaphore fileJobs = new Semaphore(1);  //file requests running, each with its own pipeline threads
+    private Path fileRoot = Path.of("").toAbsolutePath();  //directory file requests are confined to
+
+    /**
+     * Result of one request as sent back to the client
+     */
+    static class Result {
+        final byte status;
+        final long queueNanos;
+        final long serviceNanos;
+        final byte[] payload;
+
+        Result(byte status, long queueNanos, long serviceNanos, byte[] payload) {
+            this.status = status;
+            this.queueNanos = queueNanos;
+            this.serviceNanos = serviceNanos;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Constructs CompressionServer (does not start listening until serve() is called)
+     *
+     * @param address        Loopback InetSocketAddress or UnixDomainSocketAddress to listen on
+     * @param workerCount    Number of worker threads doing compression
+     * @param queueCapacity  Number of requests allowed to wait for a worker before new ones are rejected
+     * @param maxConnections Number of connections served at once, further connections are closed immediately
+     */
+    public CompressionServer(SocketAddress address, int workerCount, int queueCapacity, int maxConnections) {
+        this.address = address;
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.AbortPolicy());
+        connections = new ThreadPoolExecutor(0, maxConnections, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Sets how many inline request and result bytes may be held in memory at once (call before serve())
+     *
+     * @param bytes Budget in bytes, at least MIN_PAYLOAD_BUDGET so the largest request and its result fit together
+     */
+    public void setPayloadBudget(int bytes) {
+        if (bytes < MIN_PAYLOAD_BUDGET) throw new IllegalArgumentException("Payload budget must be at least " + MIN_PAYLOAD_BUDGET);
+        payloadBudget = new Semaphore(bytes);
+    }
+
+    /**
+     * Sets how many file requests may run at once (call before serve())
+     * Each one runs a PipelinedCompressor with three threads of its own, outside the worker pool
+     *
+     * @param count Number of concurrent file requests, 0 to refuse them all
+     */
+    public void setFileJobs(int count) {
+        if (count < 0) throw new IllegalArgumentException("File jobs must not be negative: " + count);
+        fileJobs = new Semaphore(count);
+    }
+
+    /**
+     * Sets the directory file requests are confined to (call before serve())
+     *
+     * @param root Existing directory; request paths are resolved against it and must stay inside it
+     * @throws IOException If the directory doesn't exist
+     */
+    public void setFileRoot(Path root) throws IOException {
+        if (!Files.isDirectory(root)) throw new IOException(root + " is not a directory");
+        fileRoot = root.toAbsolutePath();
+    }
+
+    /**
+     * Runs a few thousand messages through every worker so the encoder/decoder are JIT compiled before real requests arrive
+     *
+     * @param rounds Number of compress/decompress round trips per worker
+     */
+    public void warmUp(int rounds) throws IOException {
+        workers.prestartAllCoreThreads();
+        byte[] sample = new byte[16 * 1024];
+        Random random = new Random(0);
+        String text = "the quick brown fox jumps over the lazy dog\n";
+        for (int i = 0; i < sample.length; i++) sample[i] = (byte) text.charAt(random.nextInt(text.length()));
+        Future<?>[] runs = new Future<?>[workers.getCorePoolSize()];
+        for (int w = 0; w < runs.length; w++) {
+            runs[w] = workers.submit(() -> {
+                for (int r = 0; r < rounds; r++) decompress(compress(sample));
+                return null;
+            });
+        }
+        try {
+            for (Future<?> run : runs) run.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IOException("Warm up failed", e.getCause());
+        }
+    }
+
+    /**
+     * Accepts connections until close() is called
+     *
+     * @throws IOException Possible Exception when binding or accepting
+     */
+    public void serve() throws IOException {
+        boolean unix = address instanceof UnixDomainSocketAddress;
+        if (unix) Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        server = unix ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+        server.bind(address);
+        System.out.println("Compression server listening on " + address);
+        try {
+            while (server.isOpen()) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (IOException e) {
+                    if (!server.isOpen()) break;
+                    throw e;
+                }
+                try {
+                    connections.execute(() -> handle(client));
+                } catch (RejectedExecutionException e) {
+                    System.err.println("Too many connections, closing new one");
+                    client.close();
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stops accepting connections and shuts the pools down
+     */
+    public void close() throws IOException {
+        if (server != null) server.close();
+        if (address instanceof UnixDomainSocketAddress) Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+        connections.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Serves requests on one connection until the client closes it
+     *
+     * @param client Connected channel
+     */
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;  //client closed the connection
+                }
+                int length = in.readInt();
+                if (length < 0 || length > MAX_PAYLOAD) {
+                    //can't skip a payload we refuse to read, so report and drop the connection
+                    writeResult(out, new Result(STATUS_ERROR, 0, 0, utf8("Payload of " + length + " bytes is too large")));
+                    return;
+                }
+                //turn the request away before reading its payload if nothing could take it
+                if (workers.getQueue().remainingCapacity() == 0 && workers.getActiveCount() >= workers.getMaximumPoolSize()) {
+                    in.skipNBytes(length);
+                    writeResult(out, new Result(STATUS_BUSY, 0, 0, utf8("Server busy, " + workers.getQueue().size() + " requests queued")));
+                    continue;
+                }
+                if (!payloadBudget.tryAcquire(length)) {
+                    in.skipNBytes(length);
+                    writeResult(out, new Result(STATUS_BUSY, 0, 0, utf8("Server busy, payload budget in use")));
+                    continue;
+                }
+                try {
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    int resultSize;
+                    try {
+                        resultSize = resultSize(op, payload);
+                    } catch (IOException e) {
+                        writeResult(out, new Result(STATUS_ERROR, 0, 0, utf8(e.getMessage())));
+                        continue;
+                    }
+                    //the result is held until the client has read it, so it counts against the budget until then
+                    if (!payloadBudget.tryAcquire(resultSize)) {
+                        writeResult(out, new Result(STATUS_BUSY, 0, 0, utf8("Server busy, payload budget in use")));
+                        continue;
+                    }
+                    try {
+                        writeResult(out, submit(op, payload));
+                    } finally {
+                        payloadBudget.release(resultSize);
+                    }
+                } finally {
+                    payloadBudget.release(length);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Connection error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Queues a request on the worker pool and waits for its result
+     *
+     * @param op      Requested operation
+     * @param payload Request payload
+     * @return Result to send back, STATUS_BUSY if the pool and its queue are full
+     */
+    Result submit(byte op, byte[] payload) {
+        boolean fileJob = op == OP_COMPRESS_FILE || op == OP_DECOMPRESS_FILE;
+        if (fileJob && !fileJobs.tryAcquire()) {
+            return new Result(STATUS_BUSY, 0, 0, utf8("Server busy, all file job slots in use"));
+        }
+        long queued = System.nanoTime();
+        Future<Result> future;
+        try {
+            future = workers.submit(() -> {
+                long started = System.nanoTime();
+                try {
+                    byte[] result = execute(op, payload);
+                    return new Result(STATUS_OK, started - queued, System.nanoTime() - started, result);
+                } catch (IOException | RuntimeException e) {
+                    return new Result(STATUS_ERROR, started - queued, System.nanoTime() - started, utf8(String.valueOf(e.getMessage())));
+                } finally {
+                    if (fileJob) fileJobs.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (fileJob) fileJobs.release();
+            return new Result(STATUS_BUSY, 0, 0, utf8("Server busy, " + workers.getQueue().size() + " requests queued"));
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return new Result(STATUS_ERROR, 0, 0, utf8("Server shutting down"));
+        } catch (ExecutionException e) {
+            return new Result(STATUS_ERROR, 0, 0, utf8(String.valueOf(e.getCause())));
+        }
+    }
+
+    /**
+     * Performs one request on the calling worker thread
+     *
+     * @param op      Requested operation
+     * @param payload Request payload
+     * @return Result payload
+     * @throws IOException Possible Exception from compression or file access
+     */
+    private byte[] execute(byte op, byte[] payload) throws IOException {
+        switch (op) {
+            case OP_COMPRESS:
+                return compress(payload);
+            case OP_DECOMPRESS:
+                return decompress(payload);
+            case OP_COMPRESS_FILE: {
+                String filePath = new String(payload, StandardCharsets.UTF_8);
+                String local = resolveFile(filePath);
+                new PipelinedCompressor(local).compressFile(local);
+                return utf8(local.substring(0, local.length() - 4) + "_compressed.txt");
+            }
+            case OP_DECOMPRESS_FILE: {
+                //the code tree is rebuilt from the original file, same as Compressor
+                String filePath = new String(payload, StandardCharsets.UTF_8);
+                String local = resolveFile(filePath);
+                new PipelinedCompressor(local).decompressFile(local);
+                return utf8(local.substring(0, local.length() - 4) + "_decompressed.txt");
+            }
+            default:
+                throw new IOException("Unknown operation " + op);
+        }
+    }
+
+    /**
+     * Resolves a file request's path against the file root
+     *
+     * @param filePath Path of a 'fileName'.txt file, relative to the root (or absolute inside it)
+     * @return Path of the file on this machine
+     * @throws IOException If the path isn't a .txt file inside the root, or it or its outputs are symbolic links
+     */
+    private String resolveFile(String filePath) throws IOException {
+        if (!filePath.endsWith(".txt")) throw new IOException("File requests need a .txt path, got " + filePath);
+        Path path = fileRoot.resolve(filePath).normalize();
+        //the directory's real path catches links in the middle of the path, the checks below links to the files
+        Path directory = path.getParent().toRealPath();
+        if (!directory.startsWith(fileRoot.toRealPath())) throw new IOException(filePath + " is outside the server's file root");
+        String shortName = path.getFileName().toString();
+        shortName = shortName.substring(0, shortName.length() - 4);
+        for (String name : new String[]{shortName + ".txt", shortName + "_compressed.txt", shortName + "_decompressed.txt"}) {
+            if (Files.isSymbolicLink(directory.resolve(name))) throw new IOException(name + " is a symbolic link");
+        }
+        return directory.resolve(shortName + ".txt").toString();
+    }
+
+    /**
+     * Most bytes a request's result can hold, reserved from the payload budget before it runs
+     * File results are just a path or an error message, so they aren't counted
+     *
+     * @param op      Requested operation
+     * @param payload Request payload
+     * @return Upper bound on the result's length in bytes
+     * @throws IOException If a message to decompress has a length that is too large or can't be right
+     */
+    private static int resultSize(byte op, byte[] payload) throws IOException {
+        switch (op) {
+            case OP_COMPRESS:
+                return HuffmanEncoder.maxCompressedLength(payload.length);
+            case OP_DECOMPRESS:
+                return decompressedLength(payload);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Reads and checks the original length at the start of a compressed message
+     *
+     * @param message Compressed message
+     * @return Length the message decompresses to
+     * @throws IOException If the length is over MAX_PAYLOAD, or more than the message's bits could code
+     */
+    private static int decompressedLength(byte[] message) throws IOException {
+        int length = HuffmanDecoder.decompressedLength(ByteBuffer.wrap(message));
+        if (length > MAX_PAYLOAD) throw new IOException("Decompressed size " + length + " is too large");
+        //every byte costs at least one bit, so a header claiming more than that is corrupt
+        if (length < 0 || length > 8L * message.length) throw new IOException("Corrupt message, claims " + length + " bytes from " + message.length);
+        return length;
+    }
+
+    /**
+     * Compresses a message with this thread's pooled encoder
+     */
+    private static byte[] compress(byte[] message) {
+        ByteBuffer dst = ByteBuffer.allocate(HuffmanEncoder.maxCompressedLength(message.length));
+        int n = HuffmanEncoder.forCurrentThread().compress(message, dst);
+        return Arrays.copyOf(dst.array(), n);
+    }
+
+    /**
+     * Decompresses a message with this thread's pooled decoder
+     */
+    private static byte[] decompress(byte[] message) throws IOException {
+        ByteBuffer src = ByteBuffer.wrap(message);
+        ByteBuffer dst = ByteBuffer.allocate(decompressedLength(message));
+        HuffmanDecoder.forCurrentThread().decompress(src, dst);
+        return dst.array();
+    }
+
+    /**
+     * Writes a result in the response format
+     */
+    private static void writeResult(DataOutputStream out, Result result) throws IOException {
+        out.writeByte(result.status);
+        out.writeLong(result.queueNanos);
+        out.writeLong(result.serviceNanos);
+        out.writeInt(result.payload.length);
+        out.write(result.payload);
+        out.flush();
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts the server
+     * Usage: CompressionServer [--port N | --socket path] [--workers N] [--queue N] [--connections N]
+     *                          [--memory MB] [--file-jobs N] [--root dir]
+     *
+     * @param args Command line arguments
+     * @throws IOException Possible Exception when binding or accepting
+     */
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), DEFAULT_PORT);
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        int queueCapacity = 4 * workerCount;
+        int maxConnections = 64;
+        int payloadBudget = DEFAULT_PAYLOAD_BUDGET;
+        int fileJobs = 1;
+        Path fileRoot = Path.of("");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port":
+                    address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[i + 1]));
+                    break;
+                case "--socket":
+                    address = UnixDomainSocketAddress.of(Path.of(args[i + 1]));
+                    break;
+                case "--workers":
+                    workerCount = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--queue":
+                    queueCapacity = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--connections":
+                    maxConnections = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--memory":
+                    payloadBudget = Math.multiplyExact(Integer.parseInt(args[i + 1]), 1024 * 1024);
+                    break;
+                case "--file-jobs":
+                    fileJobs = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--root":
+                    fileRoot = Path.of(args[i + 1]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+        CompressionServer server = new CompressionServer(address, workerCount, queueCapacity, maxConnections);
+        server.setPayloadBudget(payloadBudget);
+        server.setFileJobs(fileJobs);
+        server.setFileRoot(fileRoot);
+        server.warmUp(2000);
+        System.out.println("Warmed up " + workerCount + " workers");
+        server.serve();
+    }
+}
@@ -8,9 +8,20 @@ import java.util.HashMap;
  * @author Logan Chang, CS10, PS3, 20F
  */
 public class Compressor {
-    private final HuffmanTools ht;
+    public static final int LEVEL_CODE_POINTS = -2;  //per-file Huffman code over Unicode code points (CodePointCompressor)
+    public static final int LEVEL_TREE = -1;  //original per-file Huffman Encoding Tree over chars (default)
+    public static final int LEVEL_AUTO = 0;   //try each block engine on the start of the file and pick one for the target
+    public static final int LEVEL_FASTEST = 1;
+    public static final int LEVEL_MAX = 9;
+
+    private HuffmanTools ht;  //opens the file, so only created when the LEVEL_TREE format needs it
     private final String filename;
     private BinaryTree<TreeData> codeTree;
+    private int level = LEVEL_TREE;
+    private double autoMinMBps;         //speed target for LEVEL_AUTO, 0 if none
+    private double autoMaxRatio;        //compressed/original size target for LEVEL_AUTO, 0 if none
+    private HuffmanDictionary staticTable;  //table for levels 1-3, null to train on the file's first block
+    private BlockCodec.Strategy strategy;   //engine used by the last block compression
 
     /**
      * Constructs Compressor object
@@ -19,8 +30,60 @@ public class Compressor {
      */
     public Compressor(String filename) {
         this.filename = filename;
-        //create a HuffmanTools object for the given file
-        ht = new HuffmanTools(this.filename);
+    }
+
+    /**
+     * Constructs Compressor object with a compression level
+     *
+     * @param filename Name of the original file as a String
+     * @param level    LEVEL_TREE, LEVEL_AUTO, or 1 (fastest) to 9 (strongest)
+     */
+    public Compressor(String filename, int level) {
+        this(filename);
+        setLevel(level);
+    }
+
+    /**
+     * Sets the compression level
+     * LEVEL_TREE keeps the original char tree format and LEVEL_CODE_POINTS codes whole Unicode code points instead;
+     * 1-3 use a cached static table, 4-6 per-block Huffman codes, 7-9 per-block codes with previous-byte context
+     * modeling, and LEVEL_AUTO picks one of those per file
+     *
+     * @param level LEVEL_CODE_POINTS, LEVEL_TREE, LEVEL_AUTO, or 1 (fastest) to 9 (strongest)
+     */
+    public void setLevel(int level) {
+        if (level < LEVEL_CODE_POINTS || level > LEVEL_MAX) throw new IllegalArgumentException("Unknown level " + level);
+        this.level = level;
+    }
+
+    /**
+     * Sets what LEVEL_AUTO optimizes for: the fastest engine reaching maxRatio, or if only a speed is given,
+     * the smallest output reaching minMBps (with neither, the smallest output)
+     *
+     * @param minMBps  Required compression speed in MB/s, or 0 for none
+     * @param maxRatio Required compressed/original size ratio, or 0 for none
+     */
+    public void setAutoTarget(double minMBps, double maxRatio) {
+        autoMinMBps = minMBps;
+        autoMaxRatio = maxRatio;
+    }
+
+    /**
+     * Sets a pre-trained table for levels 1-3, so they skip training on the file's first block
+     *
+     * @param table Table to use, or null to train one per file
+     */
+    public void setStaticTable(HuffmanDictionary table) {
+        staticTable = table;
+    }
+
+    /**
+     * Getter for the engine used by the last compression at a level other than LEVEL_TREE
+     *
+     * @return Strategy used, or null if none
+     */
+    public BlockCodec.Strategy getStrategy() {
+        return strategy;
     }
 
     /**
@@ -29,6 +92,8 @@ public class Compressor {
      * @return Map of char:bit code sequence for each distinct charter in the file
      */
     public HashMap<Character, String> getCodeMap() throws IOException{
+        //create a HuffmanTools object for the given file
+        if (ht == null) ht = new HuffmanTools(filename);
         //set codeTree to the Huffman Encoding Map
         codeTree = ht.createTree();
         //return HuffmanTools Map of char:bit code sequence
@@ -54,6 +119,15 @@ public class Compressor {
         //create the name for the compressed file
         String shortName = filePath.substring(0, filePath.length() - 4);
         String outputFile = shortName + "_compressed.txt";
+        if (level == LEVEL_CODE_POINTS) {
+            new CodePointCompressor(filename).compressFile(filePath);
+            return;
+        }
+        //levels other than LEVEL_TREE go through the block engines
+        if (level != LEVEL_TREE) {
+            compressBlocks(outputFile);
+            return;
+        }
         //compressed file requires reading from a plain txt file and writing bits to compressed file
         BufferedReader input = null;    //plain txt file reader
         BufferedBitWriter bitOutput = new BufferedBitWriter(outputFile);    //bit writer to compressed file
@@ -97,6 +171,33 @@ public class Compressor {
         }
     }
 
+    /**
+     * Compresses the original file's bytes with the block engine selected by 'level'
+     *
+     * @param outputFile Name of the compressed file
+     * @throws IOException Possible Exception when opening/reading/writing files
+     */
+    private void compressBlocks(String outputFile) throws IOException {
+        BlockCodec codec = new BlockCodec();
+        try (InputStream input = new FileInputStream(filename);
+             OutputStream output = new FileOutputStream(outputFile)) {
+            if (level == LEVEL_AUTO) {
+                //try every engine on the start of the file, keeping the chosen engine's output for it
+                int sampleSize = BlockCodec.autoSampleSize(new File(filename).length());
+                strategy = codec.compressAuto(input, output, sampleSize, autoMinMBps, autoMaxRatio, staticTable);
+                double[] mbps = codec.getTrialMBps(), ratios = codec.getTrialRatios();
+                for (BlockCodec.Strategy trial : BlockCodec.Strategy.values()) {
+                    System.out.printf("Auto trial %s: %.1f MB/s, ratio %.3f%n", trial, mbps[trial.ordinal()], ratios[trial.ordinal()]);
+                }
+            } else {
+                strategy = BlockCodec.forLevel(level);
+                codec.compress(input, output, strategy, staticTable);
+            }
+        }
+        System.out.println("Compressed with " + strategy + " engine");
+        System.out.println("Compressed file is now closed");
+    }
+
     /**
      * Performs decompression on compressed file ('fileName'_compressed.txt) and writes decompressed text to ('fileName'_decompressed.txt)
      *
@@ -108,6 +209,19 @@ public class Compressor {
         String shortName = filePath.substring(0, filePath.length() - 4);
         String inputFile = shortName + "_compressed.txt";
         String outputFile = shortName + "_decompressed.txt";
+        if (level == LEVEL_CODE_POINTS) {
+            new CodePointCompressor(filename).decompressFile(filePath);
+            return;
+        }
+        //block streams record their own engine, so they decompress the same way whatever the level
+        if (level != LEVEL_TREE) {
+            try (InputStream input = new FileInputStream(inputFile);
+                 OutputStream output = new FileOutputStream(outputFile)) {
+                new BlockCodec().decompress(input, output);
+            }
+            System.out.println("Decompressed file is now closed");
+            return;
+        }
         //decompression requires reading bits from the compressed file and writing plain text to the decompressed file
         BufferedBitReader bitInput;  //bit code reader from the compressed file
         BufferedWriter output = new BufferedWriter(new FileWriter(outputFile)); //plain text writing to the decompressed file
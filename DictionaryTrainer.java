@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Trains a HuffmanDictionary from a directory of sample messages, and compresses/decompresses single messages with one
+ * Samples are counted in parallel; the per-sample byte counts are simply summed, so the result (and its derived ID)
+ * only depends on the samples, not on thread scheduling
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class DictionaryTrainer {
+    /**
+     * Lists the sample files under a directory in a fixed order
+     *
+     * @param sampleDir Directory to search (recursively)
+     * @return Regular files under sampleDir, sorted by path
+     * @throws IOException Possible Exception when listing the directory
+     */
+    public static List<Path> listSamples(Path sampleDir) throws IOException {
+        try (Stream<Path> files = Files.walk(sampleDir)) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Trains a dictionary from the given samples
+     *
+     * @param samples Sample message files
+     * @param id      Dictionary ID, or -1 to derive one from the trained code lengths
+     * @return Trained dictionary
+     * @throws IOException Possible Exception when reading a sample
+     */
+    public static HuffmanDictionary train(List<Path> samples, int id) throws IOException {
+        try {
+            long[] counts = samples.parallelStream()
+                    .map(DictionaryTrainer::countBytes)
+                    .reduce(new long[256], DictionaryTrainer::sum);
+            return HuffmanDictionary.fromCounts(id, counts);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Counts each byte value in one sample
+     */
+    private static long[] countBytes(Path sample) {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(sample);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long[] counts = new long[256];
+        for (byte b : data) counts[b & 0xFF]++;
+        return counts;
+    }
+
+    /**
+     * Adds two count tables into a new one (leaves both inputs unchanged, as reduce() requires)
+     */
+    private static long[] sum(long[] a, long[] b) {
+        long[] total = Arrays.copyOf(a, 256);
+        for (int s = 0; s < 256; s++) total[s] += b[s];
+        return total;
+    }
+
+    /**
+     * Sizes of the samples compressed with and without the dictionary, to show what training bought
+     *
+     * @param samples    Sample message files
+     * @param dictionary Trained dictionary
+     * @return {original bytes, self-contained compressed bytes, dictionary compressed bytes}
+     */
+    static long[] evaluate(List<Path> samples, HuffmanDictionary dictionary) {
+        return samples.parallelStream().map(sample -> {
+            byte[] data;
+            try {
+                data = Files.readAllBytes(sample);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ByteBuffer dst = ByteBuffer.allocate(HuffmanEncoder.maxCompressedLength(data.length));
+            HuffmanEncoder encoder = HuffmanEncoder.forCurrentThread();
+            long plain = encoder.compress(data, dst);
+            dst.clear();
+            long withDictionary = encoder.compress(data, 0, data.length, dst, dictionary);
+            return new long[]{data.length, plain, withDictionary};
+        }).reduce(new long[3], (a, b) -> new long[]{a[0] + b[0], a[1] + b[1], a[2] + b[2]});
+    }
+
+    /**
+     * Command line tool
+     * Usage: DictionaryTrainer train <sampleDir> <out.dict> [id]
+     *        DictionaryTrainer compress|decompress <dict> <in> <out>
+     *
+     * @param args Command line arguments
+     * @throws IOException Possible Exception when reading samples or reading/writing files
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("train")) {
+            List<Path> samples = listSamples(Path.of(args[1]));
+            if (samples.isEmpty()) {
+                System.err.println("No samples found in " + args[1]);
+                System.exit(1);
+            }
+            long start = System.nanoTime();
+            HuffmanDictionary dictionary = train(samples, args.length > 3 ? Integer.parseInt(args[3]) : -1);
+            long elapsed = System.nanoTime() - start;
+            dictionary.write(Path.of(args[2]));
+            long[] sizes = evaluate(samples, dictionary);
+            System.out.printf("Trained dictionary %d from %d samples in %.1f ms -> %s%n",
+                    dictionary.getId(), samples.size(), elapsed / 1e6, args[2]);
+            System.out.printf("Samples: %d bytes, %d compressed self-contained, %d compressed with dictionary%n",
+                    sizes[0], sizes[1], sizes[2]);
+            return;
+        }
+        if (args.length == 4 && (args[0].equals("compress") || args[0].equals("decompress"))) {
+            HuffmanDictionary dictionary = HuffmanDictionary.read(Path.of(args[1]));
+            HuffmanDictionary.register(dictionary);
+            byte[] input = Files.readAllBytes(Path.of(args[2]));
+            ByteBuffer dst;
+            if (args[0].equals("compress")) {
+                dst = ByteBuffer.allocate(HuffmanEncoder.maxCompressedLength(input.length));
+                HuffmanEncoder.forCurrentThread().compress(input, 0, input.length, dst, dictionary.getId());
+            } else {
+                ByteBuffer src = ByteBuffer.wrap(input);
+                dst = ByteBuffer.allocate(HuffmanDecoder.decompressedLength(src));
+                HuffmanDecoder.forCurrentThread().decompress(src, dst);
+            }
+            Files.write(Path.of(args[3]), Arrays.copyOf(dst.array(), dst.position()));
+            return;
+        }
+        System.err.println("Usage: DictionaryTrainer train <sampleDir> <out.dict> [id]");
+        System.err.println("       DictionaryTrainer compress|decompress <dict> <in> <out>");
+        System.exit(2);
+    }
+}
@@ -16,16 +16,32 @@ public class Driver {
      * Driver code to run the file compression and decompression
      * Uses user input to read in the original txt file
      *
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments, optionally a compression level (see Compressor.setLevel)
      */
     public static void main(String[] args) {
+        //check the level before asking for a file
+        int level = Compressor.LEVEL_TREE;
+        if (args.length > 0) {
+            try {
+                level = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                level = Integer.MIN_VALUE;
+            }
+            if (level < Compressor.LEVEL_CODE_POINTS || level > Compressor.LEVEL_MAX) {
+                System.err.println("Invalid compression level: " + args[0]);
+                System.err.println("Usage: Driver [level]  (" + Compressor.LEVEL_CODE_POINTS + " code points, "
+                        + Compressor.LEVEL_TREE + " char tree (default), " + Compressor.LEVEL_AUTO + " auto, "
+                        + Compressor.LEVEL_FASTEST + "-" + Compressor.LEVEL_MAX + " fastest to strongest)");
+                return;
+            }
+        }
         Scanner scan = new Scanner(System.in);
         System.out.println("Please enter file name: ");
         String fname = scan.nextLine().strip().replaceAll("\\s+", "");
         if (fname.endsWith(".txt")) fname = fname.substring(0, fname.length() - 4);
         if(fname.startsWith("inputs/")) fname = fname.substring(7);
         String filePath = "inputs/" + fname + ".txt";
-        compressAndDecompress(filePath);
+        compressAndDecompress(filePath, level);
     }
 
     /**
@@ -55,8 +71,18 @@ public class Driver {
      * @param filePath Relative path of original file as a String
      */
     public static void compressAndDecompress(String filePath) {
+        compressAndDecompress(filePath, Compressor.LEVEL_TREE);
+    }
+
+    /**
+     * Compresses and Decompresses given file at a compression level
+     *
+     * @param filePath Relative path of original file as a String
+     * @param level    Compression level (see Compressor.setLevel)
+     */
+    public static void compressAndDecompress(String filePath, int level) {
         //create Compressor object to do compression/decompression
-        Compressor compressor = new Compressor(filePath);
+        Compressor compressor = new Compressor(filePath, level);
         //create file name for decompressed file
         String shortName = filePath.substring(0, filePath.length() - 4);
         String outputFile = shortName + "_decompressed.txt";
@@ -0,0 +1,364 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Appendable compressed file made of self-contained frames, for logs that keep growing
+ * Unlike the single bitstream written by Compressor/BufferedBitWriter, new data is added by writing new frames
+ * and a small index block after the existing content, so appending costs time proportional to the new data only
+ *
+ * Layout: header, then frames and index blocks in the order they were appended
+ *   header (16 bytes): "HFRA", version byte, 3 reserved bytes, committed length (long)
+ *   frame:             one HuffmanEncoder message holding up to FRAME_SIZE original bytes
+ *   index block:       "HIDX", previous index block offset (long, 0 for the first), frame count (int),
+ *                      per frame: offset (long), compressed length (int), original length (int),
+ *                      CRC32 of the block so far (int), then this block's own offset (long)
+ * The committed length is the end of the newest index block, so its last 8 bytes point at it, and each index block
+ * points at the one before. Appends write frames + index after the committed length, force them to disk, and only
+ * then overwrite the committed length; readers never look past it, so they can read while an append is in progress
+ * and a crashed append is simply overwritten by the next one
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class FrameArchive implements AutoCloseable {
+    public static final int FRAME_SIZE = 64 * 1024;  //original bytes per frame
+    public static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    private static final int COMMITTED_OFFSET = 8;   //position of the committed length in the header
+    private static final int ENTRY_SIZE = 16;
+    private static final int INDEX_FIXED_SIZE = 4 + 8 + 4 + 4 + 8;  //index block size without its entries
+    private static final byte[] MAGIC = {'H', 'F', 'R', 'A'};
+    private static final byte[] INDEX_MAGIC = {'H', 'I', 'D', 'X'};
+
+    private final FileChannel channel;
+    private long committed;     //committed length as of the last load
+    private long latestIndex;   //offset of the newest index block read, 0 if none
+    private final ArrayList<long[]> frames = new ArrayList<>();  //{offset, compressed length, original length} per frame
+    private long uncompressedLength;
+
+    /**
+     * Opens an archive for reading (readers take no lock, so they don't block appenders)
+     *
+     * @param archive Path of the archive
+     * @throws IOException If the archive can't be read or is corrupt
+     */
+    public FrameArchive(Path archive) throws IOException {
+        channel = FileChannel.open(archive, StandardOpenOption.READ);
+        try {
+            checkHeader(channel, archive);
+            refresh();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Picks up frames appended since the archive was opened or last refreshed
+     * Only the new index blocks are read
+     *
+     * @return true if new frames were found
+     * @throws IOException If the archive can't be read or is corrupt
+     */
+    public boolean refresh() throws IOException {
+        long length = readLong(channel, COMMITTED_OFFSET);
+        if (length == committed) return false;
+        if (length < committed) throw new IOException("Archive shrank from " + committed + " to " + length + " bytes");
+        if (length == HEADER_SIZE) {
+            //created but nothing appended yet
+            committed = length;
+            return false;
+        }
+        long newest = readLong(channel, length - 8);
+        //walk back from the newest index block until we reach the one already loaded, then add the new ones oldest first
+        ArrayList<long[][]> blocks = new ArrayList<>();
+        for (long offset = newest; offset != latestIndex; ) {
+            long[] previous = new long[1];
+            blocks.add(readIndex(channel, offset, length, previous));
+            offset = previous[0];
+        }
+        for (int b = blocks.size() - 1; b >= 0; b--) {
+            for (long[] frame : blocks.get(b)) {
+                frames.add(frame);
+                uncompressedLength += frame[2];
+            }
+        }
+        committed = length;
+        latestIndex = newest;
+        return true;
+    }
+
+    /**
+     * Getter for the number of frames
+     *
+     * @return Number of frames as of the last refresh
+     */
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * Getter for the total original length
+     *
+     * @return Sum of the original lengths of all frames as of the last refresh
+     */
+    public long getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    /**
+     * Decompresses one frame
+     *
+     * @param i   Frame number, 0 is the oldest
+     * @param dst Buffer to write to, needs at least FRAME_SIZE bytes remaining
+     * @return Number of bytes written to dst
+     * @throws IOException If the frame can't be read or is corrupt
+     */
+    public int readFrame(int i, ByteBuffer dst) throws IOException {
+        long[] frame = frames.get(i);
+        ByteBuffer src = ByteBuffer.allocate((int) frame[1]);
+        readFully(channel, src, frame[0]);
+        src.flip();
+        //check the frame's own length against the index before decoding, so a corrupt header can't overrun dst
+        int length = HuffmanDecoder.decompressedLength(src);
+        if (length != frame[2]) throw new IOException("Frame " + i + " header says " + length + " bytes, index says " + frame[2]);
+        int n = HuffmanDecoder.forCurrentThread().decompress(src, dst);
+        if (n != frame[2]) throw new IOException("Frame " + i + " decoded to " + n + " bytes, index says " + frame[2]);
+        return n;
+    }
+
+    /**
+     * Decompresses every frame, oldest first
+     *
+     * @param out Stream to write the original data to
+     * @throws IOException If a frame can't be read or is corrupt, or out can't be written
+     */
+    public void extractTo(OutputStream out) throws IOException {
+        ByteBuffer dst = ByteBuffer.allocate(FRAME_SIZE);
+        for (int i = 0; i < frames.size(); i++) {
+            dst.clear();
+            int n = readFrame(i, dst);
+            out.write(dst.array(), 0, n);
+        }
+    }
+
+    /**
+     * Closes the archive
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Appends data to an archive, creating it if needed
+     *
+     * @param archive Path of the archive
+     * @param data    Bytes to append
+     * @return Number of frames added
+     * @throws IOException If the archive can't be written or is corrupt
+     */
+    public static int append(Path archive, byte[] data) throws IOException {
+        return append(archive, new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Appends everything read from 'input' to an archive, creating it if needed
+     * Appenders hold an exclusive file lock, so appends from different processes are serialized
+     * (within one JVM, callers must not append to the same archive from two threads at once)
+     *
+     * @param archive Path of the archive
+     * @param input   Stream of bytes to append (read to its end, not closed)
+     * @return Number of frames added
+     * @throws IOException If the archive can't be written or is corrupt
+     */
+    public static int append(Path archive, InputStream input) throws IOException {
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE)) {
+            //held until the channel is closed
+            channel.lock();
+            long committed;
+            long previousIndex = 0;
+            if (channel.size() == 0) {
+                //new archive: write the header with nothing committed yet
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.put(MAGIC).put((byte) VERSION).put(new byte[3]).putLong(HEADER_SIZE).flip();
+                writeFully(channel, header, 0);
+                committed = HEADER_SIZE;
+            } else {
+                checkHeader(channel, archive);
+                committed = readLong(channel, COMMITTED_OFFSET);
+                if (committed < HEADER_SIZE || committed > channel.size()) {
+                    throw new IOException("Corrupt committed length " + committed + " in " + archive);
+                }
+                if (committed > HEADER_SIZE) {
+                    previousIndex = readLong(channel, committed - 8);
+                    //check the newest block before chaining to it, so a bad pointer isn't carried forward
+                    readIndex(channel, previousIndex, committed, new long[1]);
+                }
+            }
+            //write the new frames where the committed content ends (overwriting any torn earlier append)
+            long position = committed;
+            ArrayList<long[]> added = new ArrayList<>();
+            byte[] block = new byte[FRAME_SIZE];
+            ByteBuffer compressed = ByteBuffer.allocate(HuffmanEncoder.maxCompressedLength(FRAME_SIZE));
+            HuffmanEncoder encoder = HuffmanEncoder.forCurrentThread();
+            int n;
+            while ((n = input.readNBytes(block, 0, FRAME_SIZE)) > 0) {
+                compressed.clear();
+                int size = encoder.compress(block, 0, n, compressed);
+                compressed.flip();
+                writeFully(channel, compressed, position);
+                added.add(new long[]{position, size, n});
+                position += size;
+            }
+            if (added.isEmpty()) return 0;
+            //index block for just the new frames, chained to the previous one
+            ByteBuffer index = ByteBuffer.allocate(INDEX_FIXED_SIZE + ENTRY_SIZE * added.size());
+            index.put(INDEX_MAGIC).putLong(previousIndex).putInt(added.size());
+            for (long[] frame : added) index.putLong(frame[0]).putInt((int) frame[1]).putInt((int) frame[2]);
+            CRC32 crc = new CRC32();
+            crc.update(index.array(), 0, index.position());
+            index.putInt((int) crc.getValue()).putLong(position).flip();
+            writeFully(channel, index, position);
+            long newLength = position + index.capacity();
+            //make frames and index durable before publishing them through the committed length
+            channel.force(false);
+            ByteBuffer length = ByteBuffer.allocate(8).putLong(newLength);
+            length.flip();
+            writeFully(channel, length, COMMITTED_OFFSET);
+            channel.force(false);
+            //drop whatever a crashed append may have left past the new end
+            if (channel.size() > newLength) channel.truncate(newLength);
+            return added.size();
+        }
+    }
+
+    /**
+     * Reads and checks one index block
+     * Besides its CRC, the block must end within the committed length and end with its own offset, the previous block
+     * must come before it, and every frame must lie between the header and the block, so a stale pointer or a corrupt
+     * chain fails here rather than in readFrame() or as an endless walk
+     *
+     * @param channel  Archive channel
+     * @param offset   Offset of the index block
+     * @param limit    Committed length of the archive
+     * @param previous Receives the offset of the previous index block
+     * @return {offset, compressed length, original length} of each frame in the block
+     * @throws IOException If the block is missing or inconsistent
+     */
+    private static long[][] readIndex(FileChannel channel, long offset, long limit, long[] previous) throws IOException {
+        if (offset < HEADER_SIZE || offset > limit - INDEX_FIXED_SIZE) throw new IOException("Corrupt index block offset " + offset);
+        ByteBuffer fixed = ByteBuffer.allocate(16);
+        readFully(channel, fixed, offset);
+        fixed.flip();
+        for (byte b : INDEX_MAGIC) {
+            if (fixed.get() != b) throw new IOException("No index block at offset " + offset);
+        }
+        previous[0] = fixed.getLong();
+        int count = fixed.getInt();
+        if (count <= 0 || count > (limit - offset - INDEX_FIXED_SIZE) / ENTRY_SIZE) {
+            throw new IOException("Corrupt index block at offset " + offset);
+        }
+        if (previous[0] != 0 && (previous[0] < HEADER_SIZE || previous[0] >= offset)) {
+            throw new IOException("Index block at offset " + offset + " points forward to " + previous[0]);
+        }
+        ByteBuffer block = ByteBuffer.allocate(INDEX_FIXED_SIZE + ENTRY_SIZE * count);
+        readFully(channel, block, offset);
+        CRC32 crc = new CRC32();
+        crc.update(block.array(), 0, block.capacity() - 12);
+        block.position(block.capacity() - 12);
+        if (block.getInt() != (int) crc.getValue()) throw new IOException("Index block at offset " + offset + " fails its CRC");
+        if (block.getLong() != offset) throw new IOException("Index block at offset " + offset + " records a different offset");
+        block.position(16);
+        long[][] entries = new long[count][];
+        for (int i = 0; i < count; i++) {
+            long frameOffset = block.getLong();
+            int compressed = block.getInt();
+            int original = block.getInt();
+            if (frameOffset < HEADER_SIZE || compressed <= 0 || compressed > offset - frameOffset
+                    || original <= 0 || original > FRAME_SIZE) {
+                throw new IOException("Corrupt frame entry " + i + " in index block at offset " + offset);
+            }
+            entries[i] = new long[]{frameOffset, compressed, original};
+        }
+        return entries;
+    }
+
+    /**
+     * Checks the archive's magic and version
+     */
+    private static void checkHeader(FileChannel channel, Path archive) throws IOException {
+        if (channel.size() < HEADER_SIZE) throw new IOException(archive + " is not a frame archive");
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        for (byte b : MAGIC) {
+            if (header.get() != b) throw new IOException(archive + " is not a frame archive");
+        }
+        int version = header.get() & 0xFF;
+        if (version != VERSION) throw new IOException("Unsupported archive version " + version + " in " + archive);
+    }
+
+    private static long readLong(FileChannel channel, long position) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        readFully(channel, buf, position);
+        return buf.getLong(0);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) throw new IOException("Archive is truncated at offset " + position);
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) position += channel.write(buf, position);
+    }
+
+    /**
+     * Command line tool
+     * Usage: FrameArchive append <archive> <file>...
+     *        FrameArchive extract <archive> <out>
+     *        FrameArchive list <archive>
+     *
+     * @param args Command line arguments
+     * @throws IOException Possible Exception when reading/writing files
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("append")) {
+            for (int i = 2; i < args.length; i++) {
+                long start = System.nanoTime();
+                int added;
+                try (InputStream in = Files.newInputStream(Path.of(args[i]))) {
+                    added = append(Path.of(args[1]), in);
+                }
+                System.out.printf("Appended %s as %d frames in %.1f ms%n", args[i], added, (System.nanoTime() - start) / 1e6);
+            }
+        } else if (args.length == 3 && args[0].equals("extract")) {
+            try (FrameArchive archive = new FrameArchive(Path.of(args[1]));
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(Path.of(args[2])))) {
+                archive.extractTo(out);
+            }
+        } else if (args.length == 2 && args[0].equals("list")) {
+            try (FrameArchive archive = new FrameArchive(Path.of(args[1]))) {
+                System.out.println(archive.getFrameCount() + " frames, " + archive.getUncompressedLength()
+                        + " original bytes, " + Files.size(Path.of(args[1])) + " bytes on disk");
+            }
+        } else {
+            System.err.println("Usage: FrameArchive append <archive> <file>... | extract <archive> <out> | list <archive>");
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable Huffman decoding context for messages written by HuffmanEncoder
+ * Decodes one symbol per table lookup (no tree walk), and allocates nothing in steady state
+ * Not thread safe: use one context per thread, e.g. the pooled one from forCurrentThread()
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class HuffmanDecoder {
+    private static final int TABLE_BITS = HuffmanEncoder.MAX_CODE_LENGTH;
+    private static final ThreadLocal<HuffmanDecoder> PER_THREAD = ThreadLocal.withInitial(HuffmanDecoder::new);
+
+    private final int[] lengths = new int[256];  //code length of each byte value
+    private final int[] codes = new int[256];    //canonical code of each byte value
+    private final int[] table = new int[1 << TABLE_BITS];  //(symbol << 8 | length) for each possible next TABLE_BITS bits
+    private final CodeLengths builder = new CodeLengths(256);
+
+    /**
+     * Gets the decoder pooled for the calling thread, creating it on the thread's first call
+     *
+     * @return This thread's HuffmanDecoder
+     */
+    public static HuffmanDecoder forCurrentThread() {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Reads the original length of the message at src's position, without consuming anything
+     *
+     * @param src Buffer positioned at the start of a compressed message
+     * @return Number of bytes decompress() will write for this message
+     * @throws IOException If the header is corrupt
+     */
+    public static int decompressedLength(ByteBuffer src) throws IOException {
+        return getVarint(src, src.position() + 1);
+    }
+
+    /**
+     * Decompresses one message starting at src's position into dst
+     * src is left positioned just after the message, so messages can be read back to back
+     *
+     * @param src Buffer positioned at the start of a compressed message
+     * @param dst Buffer to write to, needs at least decompressedLength(src) bytes remaining
+     * @return Number of bytes written to dst
+     * @throws IOException If the message is corrupt or truncated
+     */
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        return decompress(src, dst, null);
+    }
+
+    /**
+     * Decompresses one message starting at src's position into dst
+     * Messages coded with a dictionary use 'dictionary' if its ID matches, else the one registered under their ID
+     *
+     * @param src        Buffer positioned at the start of a compressed message
+     * @param dst        Buffer to write to, needs at least decompressedLength(src) bytes remaining
+     * @param dictionary Dictionary to try first, or null to only use registered ones
+     * @return Number of bytes written to dst
+     * @throws IOException If the message is corrupt or truncated, or its dictionary is unknown
+     */
+    public int decompress(ByteBuffer src, ByteBuffer dst, HuffmanDictionary dictionary) throws IOException {
+        int p = src.position();
+        int limit = src.limit();
+        if (p >= limit) throw new IOException("Compressed message is empty");
+        int mode = src.get(p) & 0xFF;
+        int len = getVarint(src, p + 1);
+        p += 1 + HuffmanEncoder.varintSize(len);
+        if (dst.remaining() < len) throw new BufferOverflowException();
+        if (mode == HuffmanEncoder.MODE_STORED) {
+            if (limit - p < len) throw new IOException("Stored message is truncated");
+            //narrow src to the stored bytes for a bulk copy, then restore its limit
+            src.limit(p + len).position(p);
+            dst.put(src);
+            src.limit(limit);
+            return len;
+        }
+        if (mode == HuffmanEncoder.MODE_DICTIONARY) {
+            int id = getVarint(src, p);
+            p += HuffmanEncoder.varintSize(id);
+            if (dictionary == null || dictionary.getId() != id) dictionary = HuffmanDictionary.lookup(id);
+            if (dictionary == null) throw new IOException("Message needs dictionary " + id + ", which is not registered");
+            int start = dst.position();
+            src.position(decodeBits(src, p, dictionary.getDecodeTable(), TABLE_BITS, len, dst));
+            return dst.position() - start;
+        }
+        if (mode != HuffmanEncoder.MODE_TABLE) throw new IOException("Unknown compressed message mode " + mode);
+        //rebuild the code lengths from the header
+        if (p >= limit) throw new IOException("Compressed message is truncated");
+        int symbols = (src.get(p++) & 0xFF) + 1;
+        for (int s = 0; s < 256; s++) lengths[s] = 0;
+        if (symbols <= HuffmanEncoder.SPARSE_SYMBOL_LIMIT) {
+            if (limit - p < 2 * symbols) throw new IOException("Compressed message is truncated");
+            for (int i = 0; i < symbols; i++) {
+                int s = src.get(p++) & 0xFF;
+                lengths[s] = src.get(p++) & 0xFF;
+            }
+        } else {
+            if (limit - p < HuffmanEncoder.DENSE_TABLE_SIZE) throw new IOException("Compressed message is truncated");
+            for (int s = 0; s < 256; s += 2) {
+                int packed = src.get(p++) & 0xFF;
+                lengths[s] = packed >>> 4;
+                lengths[s + 1] = packed & 0x0F;
+            }
+        }
+        for (int s = 0; s < 256; s++) {
+            if (lengths[s] > TABLE_BITS) throw new IOException("Code length " + lengths[s] + " is too long");
+        }
+        if (!builder.assignCodes(lengths, 256, codes)) throw new IOException("Code lengths do not form a prefix code");
+        CodeLengths.fillDecodeTable(lengths, codes, 256, TABLE_BITS, table);
+        int start = dst.position();
+        src.position(decodeBits(src, p, table, TABLE_BITS, len, dst));
+        return dst.position() - start;
+    }
+
+    /**
+     * Decodes 'count' symbols from the bit stream starting at byte 'p' of src using a single lookup table
+     *
+     * @param src       Buffer holding the bit stream
+     * @param p         Index of the first byte of the bit stream
+     * @param table     Decode table filled by CodeLengths.fillDecodeTable
+     * @param tableBits Number of bits the table is indexed with
+     * @param count     Number of symbols to decode
+     * @param dst       Buffer to write decoded bytes to
+     * @return Index of the first byte after the bit stream
+     * @throws IOException If the bits do not match the table or run out
+     */
+    static int decodeBits(ByteBuffer src, int p, int[] table, int tableBits, int count, ByteBuffer dst) throws IOException {
+        int limit = src.limit();
+        int mask = (1 << tableBits) - 1;
+        long bitBuffer = 0;
+        int numBits = 0;
+        for (int i = 0; i < count; i++) {
+            //top up the accumulator a byte at a time
+            while (numBits <= 56 && p < limit) {
+                bitBuffer = (bitBuffer << 8) | (src.get(p++) & 0xFF);
+                numBits += 8;
+            }
+            //peek the next tableBits bits, zero padded past the end of the input
+            int peek = numBits >= tableBits
+                    ? (int) (bitBuffer >>> (numBits - tableBits)) & mask
+                    : (int) (bitBuffer << (tableBits - numBits)) & mask;
+            int entry = table[peek];
+            int len = entry & 0xFF;
+            if (len == 0 || len > numBits) throw new IOException("Corrupt or truncated compressed message");
+            dst.put((byte) (entry >>> 8));
+            numBits -= len;
+        }
+        //whole bytes still in the accumulator were read ahead and belong to whatever follows this message
+        return p - (numBits >> 3);
+    }
+
+    /**
+     * Reads a varint written by HuffmanEncoder.putVarint at absolute index p
+     *
+     * @param src Buffer to read from
+     * @param p   Index of the varint's first byte
+     * @return Decoded value
+     * @throws IOException If the varint is truncated or too long
+     */
+    static int getVarint(ByteBuffer src, int p) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (p >= src.limit()) throw new IOException("Compressed message is truncated");
+            int b = src.get(p++) & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) throw new IOException("Corrupt length in compressed message");
+                return value;
+            }
+        }
+        throw new IOException("Corrupt length in compressed message");
+    }
+}
@@ -0,0 +1,206 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Pre-trained byte code table shared by compressor and decompressor, so small messages don't carry their own table
+ * A message compressed with a dictionary only stores the dictionary ID in its header (see HuffmanEncoder)
+ * Every byte value has a code, so any message can be compressed with any dictionary
+ *
+ * File format: "HDIC", version byte, ID (int), 256 code lengths packed two per byte
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class HuffmanDictionary {
+    public static final int VERSION = 1;
+    private static final byte[] MAGIC = {'H', 'D', 'I', 'C'};
+    static final int RECORD_SIZE = 4 + 1 + 4 + 128;  //bytes written by writeTo(): magic, version, ID, packed lengths
+    private static final int MAX_TRAINING_FREQ = 1 << 24;  //frequencies are scaled down to this before building codes
+    private static final ConcurrentHashMap<Integer, HuffmanDictionary> REGISTRY = new ConcurrentHashMap<>();
+
+    private final int id;
+    private final int[] lengths = new int[256];  //code length of each byte value, all non-zero
+    private final int[] packed = new int[256];   //(code << 8 | length) of each byte value, for the encoder
+    private final int[] decodeTable = new int[1 << HuffmanEncoder.MAX_CODE_LENGTH];  //single lookup table for the decoder
+
+    /**
+     * Constructs dictionary from code lengths, precomputing the encoder's and decoder's tables
+     *
+     * @param id      Dictionary ID written in message headers
+     * @param lengths Code length of each of the 256 byte values
+     * @throws IOException If the lengths are out of range or don't form a prefix code
+     */
+    private HuffmanDictionary(int id, int[] lengths) throws IOException {
+        if (id < 0) throw new IOException("Dictionary ID must not be negative: " + id);
+        this.id = id;
+        for (int s = 0; s < 256; s++) {
+            if (lengths[s] < 1 || lengths[s] > HuffmanEncoder.MAX_CODE_LENGTH) {
+                throw new IOException("Code length " + lengths[s] + " of byte " + s + " is out of range");
+            }
+            this.lengths[s] = lengths[s];
+        }
+        int[] codes = new int[256];
+        if (!new CodeLengths(256).assignCodes(this.lengths, 256, codes)) {
+            throw new IOException("Code lengths do not form a prefix code");
+        }
+        for (int s = 0; s < 256; s++) packed[s] = (codes[s] << 8) | this.lengths[s];
+        CodeLengths.fillDecodeTable(this.lengths, codes, 256, HuffmanEncoder.MAX_CODE_LENGTH, decodeTable);
+    }
+
+    /**
+     * Builds a dictionary from byte frequencies totalled over a set of samples
+     * Frequencies are scaled down and every byte value gets at least 1, so unseen bytes still have a (long) code
+     *
+     * @param id     Dictionary ID, or -1 to derive one from the code lengths
+     * @param counts Frequency of each of the 256 byte values
+     * @return Trained dictionary
+     */
+    public static HuffmanDictionary fromCounts(int id, long[] counts) {
+        long max = 1;
+        for (long c : counts) max = Math.max(max, c);
+        int[] freq = new int[256];
+        for (int s = 0; s < 256; s++) freq[s] = 1 + (int) ((double) counts[s] * (MAX_TRAINING_FREQ - 1) / max);
+        int[] lengths = new int[256];
+        new CodeLengths(256).build(freq, 256, HuffmanEncoder.MAX_CODE_LENGTH, lengths);
+        if (id < 0) id = deriveId(lengths);
+        try {
+            return new HuffmanDictionary(id, lengths);
+        } catch (IOException e) {
+            //lengths straight from CodeLengths.build always form a valid code
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Deterministic ID for a set of code lengths, so retraining on the same samples gives the same ID
+     */
+    private static int deriveId(int[] lengths) {
+        CRC32 crc = new CRC32();
+        for (int len : lengths) crc.update(len);
+        return (int) (crc.getValue() & 0x7FFFFFFF);
+    }
+
+    /**
+     * Reads a dictionary file
+     *
+     * @param path Path of the dictionary file
+     * @return Dictionary read
+     * @throws IOException If the file can't be read or isn't a supported dictionary
+     */
+    public static HuffmanDictionary read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return readFrom(in, path.toString());
+        }
+    }
+
+    /**
+     * Reads a dictionary in the file format from a stream (e.g. embedded in another file's header)
+     *
+     * @param in     Stream positioned at the dictionary
+     * @param source Name of what is being read, for error messages
+     * @return Dictionary read
+     * @throws IOException If the stream can't be read or doesn't hold a supported dictionary
+     */
+    static HuffmanDictionary readFrom(DataInputStream in, String source) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) throw new IOException(source + " does not hold a dictionary");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("Unsupported dictionary version " + version + " in " + source);
+        int id = in.readInt();
+        int[] lengths = new int[256];
+        for (int s = 0; s < 256; s += 2) {
+            int b = in.readUnsignedByte();
+            lengths[s] = b >>> 4;
+            lengths[s + 1] = b & 0x0F;
+        }
+        return new HuffmanDictionary(id, lengths);
+    }
+
+    /**
+     * Writes this dictionary to a file
+     *
+     * @param path Path of the dictionary file to create or replace
+     * @throws IOException Possible Exception when writing the file
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Writes this dictionary in the file format to a stream
+     *
+     * @param out Stream to write to
+     * @throws IOException Possible Exception when writing
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(id);
+        for (int s = 0; s < 256; s += 2) out.writeByte((lengths[s] << 4) | lengths[s + 1]);
+    }
+
+    /**
+     * Makes this dictionary available by ID to HuffmanEncoder/HuffmanDecoder in this JVM
+     *
+     * @param dictionary Dictionary to register (replaces any earlier one with the same ID)
+     */
+    public static void register(HuffmanDictionary dictionary) {
+        REGISTRY.put(dictionary.id, dictionary);
+    }
+
+    /**
+     * Finds a registered dictionary
+     *
+     * @param id Dictionary ID
+     * @return Registered dictionary with that ID, or null if there is none
+     */
+    public static HuffmanDictionary lookup(int id) {
+        return REGISTRY.get(id);
+    }
+
+    /**
+     * Getter for id
+     *
+     * @return Dictionary ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Code length of a byte value
+     *
+     * @param symbol Byte value (0..255)
+     * @return Number of bits in its code
+     */
+    public int getLength(int symbol) {
+        return lengths[symbol];
+    }
+
+    /**
+     * Getter for the encoder's table (not copied, must not be modified)
+     *
+     * @return (code << 8 | length) of each byte value
+     */
+    int[] getPacked() {
+        return packed;
+    }
+
+    /**
+     * Getter for the decoder's table (not copied, must not be modified)
+     *
+     * @return Single lookup decode table
+     */
+    int[] getDecodeTable() {
+        return decodeTable;
+    }
+}
@@ -0,0 +1,286 @@
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable Huffman encoding context for compressing many small in-memory messages
+ * All tables and scratch space are allocated once in the constructor, so compress() allocates nothing in steady state
+ * Not thread safe: use one context per thread, e.g. the pooled one from forCurrentThread()
+ *
+ * Message format (read back by HuffmanDecoder):
+ * mode byte, original length as a varint, then for MODE_STORED the raw bytes, or for MODE_TABLE
+ * (symbol count - 1), the code lengths (symbol/length pairs if few symbols, else 256 packed 4 bit lengths)
+ * and the canonical Huffman bit codes, most significant bit first, zero padded to a whole byte,
+ * or for MODE_DICTIONARY the dictionary ID as a varint followed by the bit codes of that HuffmanDictionary
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class HuffmanEncoder {
+    public static final int MAX_CODE_LENGTH = 12;  //code length limit, keeps the decoder's lookup table at 4096 entries
+    static final int MODE_STORED = 0;              //message holds the original bytes (used when coding would not shrink them)
+    static final int MODE_TABLE = 1;               //message holds its own code lengths followed by the coded bits
+    static final int MODE_DICTIONARY = 2;          //message holds a dictionary ID followed by the coded bits
+    static final int SPARSE_SYMBOL_LIMIT = 64;     //up to this many symbols, lengths are sent as (symbol, length) pairs
+    static final int DENSE_TABLE_SIZE = 128;       //otherwise all 256 lengths are sent packed two per byte
+    private static final int GATHER_CHUNK = 512;   //message bytes looked up per gather() call
+
+    private static final ThreadLocal<HuffmanEncoder> PER_THREAD = ThreadLocal.withInitial(HuffmanEncoder::new);
+
+    private final int[] counts = new int[256];   //frequency of each byte value in the current message
+    private final int[] lengths = new int[256];  //code length of each byte value
+    private final int[] codes = new int[256];    //canonical code of each byte value
+    private final int[] packed = new int[256];   //(code << 8 | length) of each byte value, for gathered lookups
+    private final int[] gathered = new int[GATHER_CHUNK];  //packed entries of the next chunk of message bytes
+    private final CodeLengths builder = new CodeLengths(256);
+    private final SymbolKernels kernels = SymbolKernels.best();
+
+    /**
+     * Gets the encoder pooled for the calling thread, creating it on the thread's first call
+     *
+     * @return This thread's HuffmanEncoder
+     */
+    public static HuffmanEncoder forCurrentThread() {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Largest number of bytes compress() can write for a message of 'srcLength' bytes
+     *
+     * @param srcLength Length of the original message
+     * @return Upper bound on the compressed size
+     */
+    public static int maxCompressedLength(int srcLength) {
+        //a message that would not shrink is stored, so it never costs more than the mode byte and the varint length
+        return 1 + varintSize(srcLength) + srcLength;
+    }
+
+    /**
+     * Compresses src[off..off+len) into dst, starting at dst's position and advancing it
+     *
+     * @param src Array holding the message
+     * @param off Offset of the message in src
+     * @param len Length of the message
+     * @param dst Buffer to write to, needs at least maxCompressedLength(len) bytes remaining
+     * @return Number of bytes written to dst
+     */
+    public int compress(byte[] src, int off, int len, ByteBuffer dst) {
+        return encode(src, null, off, len, dst, null);
+    }
+
+    /**
+     * Compresses a whole array into dst
+     *
+     * @param src Message to compress
+     * @param dst Buffer to write to, needs at least maxCompressedLength(src.length) bytes remaining
+     * @return Number of bytes written to dst
+     */
+    public int compress(byte[] src, ByteBuffer dst) {
+        return encode(src, null, 0, src.length, dst, null);
+    }
+
+    /**
+     * Compresses the remaining bytes of src (heap or direct) into dst, advancing both positions
+     *
+     * @param src Buffer holding the message between its position and limit
+     * @param dst Buffer to write to, needs at least maxCompressedLength(src.remaining()) bytes remaining
+     * @return Number of bytes written to dst
+     */
+    public int compress(ByteBuffer src, ByteBuffer dst) {
+        return compress(src, dst, null);
+    }
+
+    /**
+     * Compresses src[off..off+len) with a pre-trained dictionary, so the header holds its ID instead of a code table
+     *
+     * @param src        Array holding the message
+     * @param off        Offset of the message in src
+     * @param len        Length of the message
+     * @param dst        Buffer to write to, needs at least maxCompressedLength(len) bytes remaining
+     * @param dictionary Dictionary to code with (the decompressing side needs it registered under the same ID)
+     * @return Number of bytes written to dst
+     */
+    public int compress(byte[] src, int off, int len, ByteBuffer dst, HuffmanDictionary dictionary) {
+        return encode(src, null, off, len, dst, dictionary);
+    }
+
+    /**
+     * Compresses src[off..off+len) with the registered dictionary 'dictionaryId'
+     *
+     * @param src          Array holding the message
+     * @param off          Offset of the message in src
+     * @param len          Length of the message
+     * @param dst          Buffer to write to, needs at least maxCompressedLength(len) bytes remaining
+     * @param dictionaryId ID of a dictionary passed to HuffmanDictionary.register()
+     * @return Number of bytes written to dst
+     */
+    public int compress(byte[] src, int off, int len, ByteBuffer dst, int dictionaryId) {
+        return encode(src, null, off, len, dst, registered(dictionaryId));
+    }
+
+    /**
+     * Compresses the remaining bytes of src (heap or direct) with a pre-trained dictionary, advancing both positions
+     *
+     * @param src        Buffer holding the message between its position and limit
+     * @param dst        Buffer to write to, needs at least maxCompressedLength(src.remaining()) bytes remaining
+     * @param dictionary Dictionary to code with, or null for a self-contained message
+     * @return Number of bytes written to dst
+     */
+    public int compress(ByteBuffer src, ByteBuffer dst, HuffmanDictionary dictionary) {
+        int n = src.hasArray()
+                ? encode(src.array(), null, src.arrayOffset() + src.position(), src.remaining(), dst, dictionary)
+                : encode(null, src, src.position(), src.remaining(), dst, dictionary);
+        src.position(src.limit());
+        return n;
+    }
+
+    /**
+     * Finds a registered dictionary
+     *
+     * @param dictionaryId ID of the dictionary
+     * @return Dictionary registered under that ID
+     */
+    private static HuffmanDictionary registered(int dictionaryId) {
+        HuffmanDictionary dictionary = HuffmanDictionary.lookup(dictionaryId);
+        if (dictionary == null) throw new IllegalArgumentException("No dictionary registered with ID " + dictionaryId);
+        return dictionary;
+    }
+
+    /**
+     * Compresses one message read either from 'array' (preferred, uses the kernels) or from 'buffer' by absolute index
+     *
+     * @param array      Array holding the message, or null to read from buffer
+     * @param buffer     Buffer holding the message when array is null
+     * @param from       Index of the first message byte in array/buffer
+     * @param len        Length of the message
+     * @param dst        Buffer to write to
+     * @param dictionary Dictionary to code with, or null for a self-contained message
+     * @return Number of bytes written to dst
+     */
+    private int encode(byte[] array, ByteBuffer buffer, int from, int len, ByteBuffer dst, HuffmanDictionary dictionary) {
+        if (dst.remaining() < maxCompressedLength(len)) throw new BufferOverflowException();
+        int start = dst.position();
+        for (int s = 0; s < 256; s++) counts[s] = 0;
+        if (array != null) kernels.histogram(array, from, len, counts);
+        else for (int i = from; i < from + len; i++) counts[buffer.get(i) & 0xFF]++;
+        int[] table = dictionary == null ? writeHeader(len, dst) : writeDictionaryHeader(len, dictionary, dst);
+        if (table == null) {
+            if (array != null) {
+                dst.put(array, from, len);
+            } else {
+                for (int i = from; i < from + len; i++) dst.put(buffer.get(i));
+            }
+            return dst.position() - start;
+        }
+        //pack codes into a 64 bit accumulator, writing out each byte as soon as it fills
+        long bitBuffer = 0;
+        int numBits = 0;
+        for (int chunk = from; chunk < from + len; chunk += GATHER_CHUNK) {
+            int n = Math.min(GATHER_CHUNK, from + len - chunk);
+            if (array != null) {
+                kernels.gather(array, chunk, n, table, gathered);
+            } else {
+                for (int i = 0; i < n; i++) gathered[i] = table[buffer.get(chunk + i) & 0xFF];
+            }
+            for (int i = 0; i < n; i++) {
+                int entry = gathered[i];
+                bitBuffer = (bitBuffer << (entry & 0xFF)) | (entry >>> 8);
+                numBits += entry & 0xFF;
+                while (numBits >= 8) {
+                    numBits -= 8;
+                    dst.put((byte) (bitBuffer >>> numBits));
+                }
+            }
+        }
+        if (numBits > 0) dst.put((byte) (bitBuffer << (8 - numBits)));
+        return dst.position() - start;
+    }
+
+    /**
+     * Builds the codes from 'counts' and writes the message header, choosing the stored mode if coding would not help
+     *
+     * @param len Length of the original message
+     * @param dst Buffer to write the header to
+     * @return Packed code table the bits should be coded with, or null if the raw bytes should follow (MODE_STORED)
+     */
+    private int[] writeHeader(int len, ByteBuffer dst) {
+        builder.build(counts, 256, MAX_CODE_LENGTH, lengths);
+        builder.assignCodes(lengths, 256, codes);
+        for (int s = 0; s < 256; s++) packed[s] = (codes[s] << 8) | lengths[s];
+        int symbols = 0;
+        long bits = 0;
+        for (int s = 0; s < 256; s++) {
+            if (lengths[s] == 0) continue;
+            symbols++;
+            bits += (long) counts[s] * lengths[s];
+        }
+        int tableSize = symbols <= SPARSE_SYMBOL_LIMIT ? 2 * symbols : DENSE_TABLE_SIZE;
+        if (symbols == 0 || 1 + tableSize + (bits + 7) / 8 >= len) {
+            dst.put((byte) MODE_STORED);
+            putVarint(dst, len);
+            return null;
+        }
+        dst.put((byte) MODE_TABLE);
+        putVarint(dst, len);
+        dst.put((byte) (symbols - 1));
+        if (symbols <= SPARSE_SYMBOL_LIMIT) {
+            for (int s = 0; s < 256; s++) {
+                if (lengths[s] == 0) continue;
+                dst.put((byte) s);
+                dst.put((byte) lengths[s]);
+            }
+        } else {
+            for (int s = 0; s < 256; s += 2) dst.put((byte) ((lengths[s] << 4) | lengths[s + 1]));
+        }
+        return packed;
+    }
+
+    /**
+     * Writes the header of a message coded with a dictionary, choosing the stored mode if coding would not help
+     *
+     * @param len        Length of the original message
+     * @param dictionary Dictionary to code with
+     * @param dst        Buffer to write the header to
+     * @return Packed code table the bits should be coded with, or null if the raw bytes should follow (MODE_STORED)
+     */
+    private int[] writeDictionaryHeader(int len, HuffmanDictionary dictionary, ByteBuffer dst) {
+        long bits = 0;
+        for (int s = 0; s < 256; s++) bits += (long) counts[s] * dictionary.getLength(s);
+        if (varintSize(dictionary.getId()) + (bits + 7) / 8 >= len) {
+            dst.put((byte) MODE_STORED);
+            putVarint(dst, len);
+            return null;
+        }
+        dst.put((byte) MODE_DICTIONARY);
+        putVarint(dst, len);
+        putVarint(dst, dictionary.getId());
+        return dictionary.getPacked();
+    }
+
+    /**
+     * Writes a non-negative int 7 bits at a time, low bits first, high bit set on all but the last byte
+     *
+     * @param dst   Buffer to write to
+     * @param value Value to write
+     */
+    static void putVarint(ByteBuffer dst, int value) {
+        while ((value & ~0x7F) != 0) {
+            dst.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        dst.put((byte) value);
+    }
+
+    /**
+     * Number of bytes putVarint() writes for 'value'
+     *
+     * @param value Value to be written
+     * @return Size of its varint encoding
+     */
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+}
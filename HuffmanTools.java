@@ -49,6 +49,12 @@ public class HuffmanTools {
         }
     }
 
+    /**
+     * HuffmanTools object without a file, for char counts gathered by the caller and passed to createTree(counts)
+     */
+    public HuffmanTools() {
+    }
+
 
     /**
      * Set charCounts to a map of (char:frequency of char in file) entries for file
@@ -133,6 +139,19 @@ public class HuffmanTools {
         } catch(IOException e){
             charCounts = getCharCounts();
         }
+        return createTree(charCounts);
+    }
+
+    /**
+     * Creates the final Huffman Encoding Tree from char counts gathered elsewhere and stores it in combinedTree
+     * Pass the counts in a map filled in the order the chars first appear in the file, so its iteration order (and
+     * the tree) matches what createTree() builds from the file itself
+     *
+     * @param counts Map of char:frequency of char for each distinct character in the file
+     * @return Final Huffman Encoding Tree for the entire file
+     */
+    public BinaryTree<TreeData> createTree(HashMap<Character, Integer> counts) {
+        charCounts = counts;
         setSingleCharPQ();
         //create reference to the PriorityQueue so we don't mess up its content
         PriorityQueue<BinaryTree<TreeData>> temp = getSingleCharPQ();
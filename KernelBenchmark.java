@@ -0,0 +1,97 @@
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Micro benchmark of the scalar vs. vector SymbolKernels, and of HuffmanEncoder as a whole (which uses best())
+ * Run with the vector engine (-Dhuffman.kernels=vector also lets best(), and so HuffmanEncoder, use it):
+ *     javac --add-modules jdk.incubator.vector -d out *.java vector/*.java incubator-src/vector/*.java
+ *     java --add-modules jdk.incubator.vector -Dhuffman.kernels=vector -cp out KernelBenchmark
+ * Each measurement is warmed up first and reports the best of several timed rounds in MB/s
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class KernelBenchmark {
+    private static final int ROUNDS = 7;
+    private static final long ROUND_BYTES = 256L * 1024 * 1024;  //bytes processed per timed round
+    private static volatile int sink;  //keeps results alive so the JIT can't drop the work
+
+    /**
+     * Kernel call being measured
+     */
+    interface Work {
+        void run(byte[] data);
+    }
+
+    /**
+     * Runs 'work' over 'data' repeatedly and reports throughput
+     *
+     * @param label Description printed with the result
+     * @param data  Input bytes
+     * @param work  Kernel call to time
+     * @return Best throughput in MB/s
+     */
+    static double measure(String label, byte[] data, Work work) {
+        long reps = Math.max(1, ROUND_BYTES / data.length);
+        //warm up so the timed rounds run compiled code
+        for (long r = 0; r < reps; r++) work.run(data);
+        double best = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (long r = 0; r < reps; r++) work.run(data);
+            long elapsed = System.nanoTime() - start;
+            best = Math.max(best, reps * (double) data.length / elapsed * 1e9 / (1 << 20));
+        }
+        System.out.printf("  %-28s %10.1f MB/s%n", label, best);
+        return best;
+    }
+
+    /**
+     * Benchmarks histogram and gather of both engines on text-like data of a few sizes
+     *
+     * @param args Command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        SymbolKernels scalar = SymbolKernels.scalar();
+        SymbolKernels best = SymbolKernels.best();
+        SymbolKernels vector = SymbolKernels.vector();
+        System.out.println("Engine used by best(): " + best.name()
+                + (vector == null ? " (add --add-modules " + SymbolKernels.VECTOR_MODULE + " for vector)" : "")
+                + (vector != null && best.name().equals("scalar") ? " (add -D" + SymbolKernels.KERNELS_PROPERTY + "=vector to use vector)" : ""));
+        //compare scalar with the vector kernels for every size, whatever best() would pick
+        SymbolKernels other = vector == null ? best : vector;
+        Random random = new Random(42);
+        String text = "the quick brown fox jumps over the lazy dog, THE QUICK BROWN FOX 0123456789\n";
+        int[] table = new int[256];
+        for (int s = 0; s < 256; s++) table[s] = (s * 31) << 8 | (1 + s % 12);
+        for (int size : new int[]{512, 16 * 1024, 64 * 1024, 1024 * 1024}) {
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++) data[i] = (byte) text.charAt(random.nextInt(text.length()));
+            int[] counts = new int[256];
+            int[] out = new int[size];
+            System.out.println(size + " bytes:");
+            double h0 = measure("histogram " + scalar.name(), data, d -> {
+                scalar.histogram(d, 0, d.length, counts);
+                sink += counts[d[0] & 0xFF];
+            });
+            double h1 = measure("histogram " + other.name(), data, d -> {
+                other.histogram(d, 0, d.length, counts);
+                sink += counts[d[0] & 0xFF];
+            });
+            double g0 = measure("gather " + scalar.name(), data, d -> {
+                scalar.gather(d, 0, d.length, table, out);
+                sink += out[d.length - 1];
+            });
+            double g1 = measure("gather " + other.name(), data, d -> {
+                other.gather(d, 0, d.length, table, out);
+                sink += out[d.length - 1];
+            });
+            ByteBuffer dst = ByteBuffer.allocate(HuffmanEncoder.maxCompressedLength(size));
+            HuffmanEncoder encoder = new HuffmanEncoder();
+            measure("HuffmanEncoder.compress", data, d -> {
+                dst.clear();
+                sink += encoder.compress(d, dst);
+            });
+            System.out.printf("  speedup: histogram %.2fx, gather %.2fx%n", h1 / h0, g1 / g0);
+        }
+    }
+}
@@ -0,0 +1,492 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pipelined version of Compressor that overlaps disk reads, Huffman encoding/decoding and disk writes
+ * Each file operation runs as three stages (reader -> coder -> writer) on separate threads, connected by
+ * bounded rings of recycled direct ByteBuffers, so a slow stage blocks (backpressure) instead of buffering the whole file
+ * The char counts for the code tree are gathered the same way, a reader stage feeding a counting stage, instead of
+ * HuffmanTools' char at a time pass; only building the tree from the counts runs on the calling thread
+ * Produces and reads the exact same files as Compressor ('fileName'_compressed.txt, 'fileName'_decompressed.txt)
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public class PipelinedCompressor {
+    public static final int BUFFER_SIZE = 64 * 1024;  //size of each direct buffer in a ring
+    public static final int RING_SLOTS = 4;           //number of buffers in each ring (bounds memory and read-ahead)
+    private static final int MAX_CODE_LENGTH = 56;    //longest code the 64 bit accumulator can take on top of a pending byte
+
+    private final HuffmanTools ht;
+    private final String filename;
+    private BinaryTree<TreeData> codeTree;
+    private HashMap<Character, String> codeMap;
+
+    /**
+     * Bounded ring of recycled direct buffers connecting a producer stage to a consumer stage
+     * Producers acquire() an empty buffer, fill it and publish() it; consumers take() it, drain it and release() it
+     */
+    static class BufferRing {
+        static final ByteBuffer END = ByteBuffer.allocate(0);  //sentinel published once the producer is done
+        private final ArrayBlockingQueue<ByteBuffer> free;     //empty buffers ready to be filled
+        private final ArrayBlockingQueue<ByteBuffer> full;     //filled buffers waiting for the consumer
+
+        /**
+         * Constructs ring with 'slots' direct buffers of 'bufferSize' bytes each
+         *
+         * @param slots      Number of buffers in the ring
+         * @param bufferSize Capacity of each buffer in bytes
+         */
+        BufferRing(int slots, int bufferSize) {
+            free = new ArrayBlockingQueue<>(slots);
+            //one extra slot so END can always be published
+            full = new ArrayBlockingQueue<>(slots + 1);
+            for (int i = 0; i < slots; i++) free.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+
+        /**
+         * Gets an empty buffer, blocking while the consumer still holds all of them
+         *
+         * @return Cleared buffer ready for writing
+         */
+        ByteBuffer acquire() throws InterruptedException {
+            return free.take();
+        }
+
+        /**
+         * Hands a filled (flipped) buffer to the consumer
+         *
+         * @param buf Buffer ready for reading, or END
+         */
+        void publish(ByteBuffer buf) throws InterruptedException {
+            full.put(buf);
+        }
+
+        /**
+         * Gets the next filled buffer, blocking until the producer publishes one
+         *
+         * @return Buffer ready for reading, or END once the producer is done
+         */
+        ByteBuffer take() throws InterruptedException {
+            return full.take();
+        }
+
+        /**
+         * Returns a drained buffer to the ring so the producer can reuse it
+         *
+         * @param buf Buffer previously returned by take()
+         */
+        void release(ByteBuffer buf) throws InterruptedException {
+            buf.clear();
+            free.put(buf);
+        }
+    }
+
+    /**
+     * Decodes the bytes coming through a ring into chars with the default charset, the same way FileReader does
+     */
+    static class CharSource {
+        private final BufferRing ring;
+        private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        //carry holds bytes of a multi-byte char split across two input buffers
+        private final ByteBuffer carry = ByteBuffer.allocate(BUFFER_SIZE + 16);
+        private boolean endOfInput;  //the ring has published END
+        private boolean flushing;    //all input is decoded, the decoder is being flushed
+        private boolean done;        //the decoder is flushed too
+
+        /**
+         * Constructs CharSource reading from 'ring'
+         *
+         * @param ring Ring of raw bytes, whose buffers are released once copied out
+         */
+        CharSource(BufferRing ring) {
+            this.ring = ring;
+        }
+
+        /**
+         * Decodes the next chars into 'chars', taking more bytes from the ring when it runs out
+         *
+         * @param chars Buffer to fill, cleared first and flipped for reading on return
+         * @return False once every char has been read
+         */
+        boolean read(CharBuffer chars) throws IOException, InterruptedException {
+            chars.clear();
+            while (chars.position() == 0 && !done) {
+                CoderResult result;
+                if (flushing) {
+                    result = decoder.flush(chars);
+                    if (result.isUnderflow()) done = true;
+                } else {
+                    carry.flip();
+                    result = decoder.decode(carry, chars, endOfInput);
+                    carry.compact();
+                    if (result.isUnderflow()) {
+                        //once all input is decoded, flush the decoder, otherwise get the next buffer
+                        if (endOfInput) {
+                            flushing = true;
+                        } else {
+                            ByteBuffer buf = ring.take();
+                            endOfInput = buf == BufferRing.END;
+                            if (!endOfInput) {
+                                carry.put(buf);
+                                ring.release(buf);
+                            }
+                        }
+                    }
+                }
+                if (result.isError()) result.throwException();
+            }
+            chars.flip();
+            return chars.hasRemaining();
+        }
+    }
+
+    /**
+     * Constructs PipelinedCompressor object
+     *
+     * @param filename Name of the original file as a String
+     */
+    public PipelinedCompressor(String filename) {
+        this.filename = filename;
+        //the file is counted by the pipeline, so HuffmanTools only builds the tree from the counts
+        ht = new HuffmanTools();
+    }
+
+    /**
+     * Gets the Huffman Encoding Tree for the file, building it (and the code map) on first use
+     *
+     * @return Huffman Encoding Tree for the file as a Binary Tree of TreeData elements
+     */
+    public BinaryTree<TreeData> getCodeTree() throws IOException {
+        if (codeMap == null) {
+            long[] counts = new long[Character.MAX_VALUE + 1];
+            char[] order = new char[Character.MAX_VALUE + 1];
+            int[] distinct = new int[1];
+            BufferRing ring = new BufferRing(RING_SLOTS, BUFFER_SIZE);
+            try (FileChannel in = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+                runStages(() -> readStage(in, ring),
+                        () -> countStage(ring, counts, order, distinct));
+            }
+            //fill the map in first appearance order so it iterates (and the tree comes out) exactly as in HuffmanTools
+            HashMap<Character, Integer> charCounts = new HashMap<>();
+            for (int i = 0; i < distinct[0]; i++) {
+                char c = order[i];
+                if (counts[c] > Integer.MAX_VALUE) throw new IOException("Char '" + c + "' appears too often to count: " + counts[c]);
+                charCounts.put(c, (int) counts[c]);
+            }
+            codeTree = ht.createTree(charCounts);
+            codeMap = ht.retrieveCodes();
+        }
+        return codeTree;
+    }
+
+    /**
+     * Performs pipelined compression of the original ('fileName'.txt) file into ('fileName'_compressed.txt)
+     *
+     * @param filePath Relative file path as a String
+     * @throws IOException Possible Exception when opening/reading/writing files
+     */
+    public void compressFile(String filePath) throws IOException {
+        String shortName = filePath.substring(0, filePath.length() - 4);
+        String outputFile = shortName + "_compressed.txt";
+        getCodeTree();
+        //flatten the code map into arrays indexed by char so the encode stage does no map lookups or String walks
+        long[] codes = new long[Character.MAX_VALUE + 1];
+        int[] lengths = new int[Character.MAX_VALUE + 1];
+        for (Character c : codeMap.keySet()) {
+            String code = codeMap.get(c);
+            if (code.length() > MAX_CODE_LENGTH) throw new IOException("Code for '" + c + "' is too long: " + code.length());
+            codes[c] = Long.parseLong(code, 2);
+            lengths[c] = code.length();
+        }
+        BufferRing inRing = new BufferRing(RING_SLOTS, BUFFER_SIZE);
+        BufferRing outRing = new BufferRing(RING_SLOTS, BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(outputFile), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            runStages(() -> readStage(in, inRing),
+                    () -> encodeStage(inRing, outRing, codes, lengths),
+                    () -> writeStage(outRing, out));
+        }
+        System.out.println("Compressed file is now closed");
+    }
+
+    /**
+     * Performs pipelined decompression of ('fileName'_compressed.txt) into ('fileName'_decompressed.txt)
+     *
+     * @param filePath Relative file path as a String
+     * @throws IOException Possible Exception when opening/reading/writing files
+     */
+    public void decompressFile(String filePath) throws IOException {
+        String shortName = filePath.substring(0, filePath.length() - 4);
+        String inputFile = shortName + "_compressed.txt";
+        String outputFile = shortName + "_decompressed.txt";
+        BinaryTree<TreeData> tree = getCodeTree();
+        BufferRing inRing = new BufferRing(RING_SLOTS, BUFFER_SIZE);
+        BufferRing outRing = new BufferRing(RING_SLOTS, BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(outputFile), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            runStages(() -> readStage(in, inRing),
+                    () -> decodeStage(inRing, outRing, tree),
+                    () -> writeStage(outRing, out));
+        }
+        System.out.println("Decompressed file is now closed");
+    }
+
+    /**
+     * Runs the three stages on their own threads and waits for all of them
+     * If any stage fails the others are interrupted (so none stay blocked on a ring) and the failure is rethrown
+     *
+     * @param stages Reader, coder and writer stages
+     * @throws IOException First failure raised by a stage
+     */
+    @SafeVarargs
+    private static void runStages(Callable<Void>... stages) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(stages.length);
+        ExecutorCompletionService<Void> done = new ExecutorCompletionService<>(pool);
+        try {
+            for (Callable<Void> stage : stages) done.submit(stage);
+            for (int i = 0; i < stages.length; i++) done.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for pipeline", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Pipeline stage failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Reader stage: fills buffers from the channel and publishes them, then publishes END
+     *
+     * @param in   Channel to read from
+     * @param ring Ring to publish filled buffers to
+     */
+    private static Void readStage(FileChannel in, BufferRing ring) throws IOException, InterruptedException {
+        while (true) {
+            ByteBuffer buf = ring.acquire();
+            int n = 0;
+            //fill the whole buffer unless we hit end of file
+            while (buf.hasRemaining() && (n = in.read(buf)) != -1) ;
+            buf.flip();
+            if (buf.hasRemaining()) ring.publish(buf);
+            else ring.release(buf);
+            if (n == -1) break;
+        }
+        ring.publish(BufferRing.END);
+        return null;
+    }
+
+    /**
+     * Writer stage: writes every published buffer to the channel and recycles it, until END
+     *
+     * @param ring Ring to take filled buffers from
+     * @param out  Channel to write to
+     */
+    private static Void writeStage(BufferRing ring, FileChannel out) throws IOException, InterruptedException {
+        ByteBuffer buf;
+        while ((buf = ring.take()) != BufferRing.END) {
+            while (buf.hasRemaining()) out.write(buf);
+            ring.release(buf);
+        }
+        return null;
+    }
+
+    /**
+     * Count stage: decodes input bytes to chars (same charset as FileReader) and counts each char
+     *
+     * @param inRing   Ring of raw input bytes
+     * @param counts   Number of times each char appears, indexed by char
+     * @param order    Distinct chars in the order they first appear
+     * @param distinct Holds the number of distinct chars in 'order'
+     */
+    private static Void countStage(BufferRing inRing, long[] counts, char[] order, int[] distinct)
+            throws IOException, InterruptedException {
+        CharSource source = new CharSource(inRing);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        int n = 0;
+        while (source.read(chars)) {
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (counts[c]++ == 0) order[n++] = c;
+            }
+        }
+        distinct[0] = n;
+        return null;
+    }
+
+    /**
+     * Encode stage: decodes input bytes to chars (same charset as FileReader) and writes each char's bit code
+     * Output matches BufferedBitWriter: bits packed most significant first, then the partial last byte and its valid bit count
+     *
+     * @param inRing  Ring of raw input bytes
+     * @param outRing Ring of compressed output bytes
+     * @param codes   Bit code of each char, right aligned
+     * @param lengths Number of bits in each char's code
+     */
+    private static Void encodeStage(BufferRing inRing, BufferRing outRing, long[] codes, int[] lengths)
+            throws IOException, InterruptedException {
+        CharSource source = new CharSource(inRing);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer out = outRing.acquire();
+        long bitBuffer = 0;  //pending bits, the lowest 'numBits' of which have not been written yet
+        int numBits = 0;
+        while (source.read(chars)) {
+            //write each char's bit code
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                int len = lengths[c];
+                if (len == 0) throw new IOException("No code for char '" + c + "', file changed since the tree was built?");
+                bitBuffer = (bitBuffer << len) | codes[c];
+                numBits += len;
+                while (numBits >= 8) {
+                    numBits -= 8;
+                    if (!out.hasRemaining()) {
+                        out.flip();
+                        outRing.publish(out);
+                        out = outRing.acquire();
+                    }
+                    out.put((byte) (bitBuffer >>> numBits));
+                }
+            }
+        }
+        //trailer: partial byte (left aligned, zero padded) followed by how many of its bits are valid
+        if (out.remaining() < 2) {
+            out.flip();
+            outRing.publish(out);
+            out = outRing.acquire();
+        }
+        out.put((byte) (bitBuffer << (8 - numBits)));
+        out.put((byte) numBits);
+        out.flip();
+        outRing.publish(out);
+        outRing.publish(BufferRing.END);
+        return null;
+    }
+
+    /**
+     * Decode stage: walks the Huffman Encoding Tree bit by bit and encodes the decoded chars (same charset as FileWriter)
+     * Holds back the last two bytes seen, since at end of file they are the partial byte and its valid bit count
+     *
+     * @param inRing  Ring of compressed input bytes
+     * @param outRing Ring of decompressed output bytes
+     * @param tree    Huffman Encoding Tree used for compression
+     */
+    private static Void decodeStage(BufferRing inRing, BufferRing outRing, BinaryTree<TreeData> tree)
+            throws IOException, InterruptedException {
+        CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        ByteBuffer[] out = {outRing.acquire()};
+        BinaryTree<TreeData> traverser = tree;
+        int held = 0;          //number of look-behind bytes held (at most 2)
+        int first = 0, second = 0;
+        ByteBuffer buf;
+        while ((buf = inRing.take()) != BufferRing.END) {
+            while (buf.hasRemaining()) {
+                int b = buf.get() & 0xFF;
+                if (held < 2) {
+                    if (held == 0) first = b;
+                    else second = b;
+                    held++;
+                    continue;
+                }
+                //first is now known not to be the final partial byte, so all 8 of its bits are valid
+                traverser = decodeBits(first, 8, tree, traverser, chars, encoder, outRing, out);
+                first = second;
+                second = b;
+            }
+            inRing.release(buf);
+        }
+        if (held < 2) throw new EOFException("File did not have two bytes");
+        if (second > 8) throw new IOException("Corrupt compressed file, last byte claims " + second + " valid bits");
+        decodeBits(first, second, tree, traverser, chars, encoder, outRing, out);
+        //encode whatever chars are left and flush the encoder
+        chars.flip();
+        encodeChars(chars, encoder, true, outRing, out);
+        while (encoder.flush(out[0]).isOverflow()) {
+            out[0].flip();
+            outRing.publish(out[0]);
+            out[0] = outRing.acquire();
+        }
+        out[0].flip();
+        outRing.publish(out[0]);
+        outRing.publish(BufferRing.END);
+        return null;
+    }
+
+    /**
+     * Decodes the leading 'count' bits of 'b', appending a char each time a leaf is reached
+     *
+     * @return Tree position to continue from with the next bits
+     */
+    private static BinaryTree<TreeData> decodeBits(int b, int count, BinaryTree<TreeData> tree, BinaryTree<TreeData> traverser,
+                                                   CharBuffer chars, CharsetEncoder encoder, BufferRing outRing, ByteBuffer[] out)
+            throws IOException, InterruptedException {
+        for (int mask = 0x80; count > 0; mask >>= 1, count--) {
+            if (traverser == null) throw new IOException("Compressed file has bits but the code tree is empty");
+            //if the bit is 1 we traverse right in the tree, else we traverse left
+            traverser = (b & mask) != 0 ? traverser.getRight() : traverser.getLeft();
+            if (traverser == null) throw new IOException("Compressed file does not match code tree");
+            if (traverser.isLeaf()) {
+                if (!chars.hasRemaining()) {
+                    chars.flip();
+                    encodeChars(chars, encoder, false, outRing, out);
+                }
+                chars.put(traverser.getData().getValue());
+                traverser = tree;
+            }
+        }
+        return traverser;
+    }
+
+    /**
+     * Encodes buffered chars into output buffers, publishing each buffer as it fills, and leaves 'chars' ready for writing
+     */
+    private static void encodeChars(CharBuffer chars, CharsetEncoder encoder, boolean endOfInput,
+                                    BufferRing outRing, ByteBuffer[] out) throws IOException, InterruptedException {
+        CoderResult result;
+        while ((result = encoder.encode(chars, out[0], endOfInput)).isOverflow()) {
+            out[0].flip();
+            outRing.publish(out[0]);
+            out[0] = outRing.acquire();
+        }
+        if (result.isError()) result.throwException();
+        chars.compact();
+    }
+
+    /**
+     * Hardcoded Driver to test pipelined file compression/decompression
+     *
+     * @param args Command Line arguments (not used)
+     * @throws IOException compressFile and decompressFile could raise IOException
+     */
+    public static void main(String[] args) throws IOException {
+        String fileName = "inputs/helloTest.txt";
+        PipelinedCompressor comp = new PipelinedCompressor(fileName);
+        comp.compressFile(fileName);
+        comp.decompressFile(fileName);
+    }
+}
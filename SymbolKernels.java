@@ -0,0 +1,188 @@
+import java.lang.reflect.Constructor;
+import vector.ByteKernels;
+
+/**
+ * Data parallel inner loops of the byte encoder: counting symbol frequencies and looking up each symbol's code
+ * best() uses the scalar engine below unless the Vector API engine (incubator-src/vector/VectorKernels.java, a
+ * vector.ByteKernels) is asked for with -Dhuffman.kernels=vector, the jdk.incubator.vector module was added to the
+ * JVM and the class was compiled
+ * The vector engine is opt-in because KernelBenchmark shows no reproducible gain: run to run the scalar kernels vary
+ * by up to 2x, the vector histogram was 0.97-0.98x scalar at 64 KB and only ahead (1.16-1.34x) at 1 MB, and the
+ * vector gather was anywhere from 0.65x to 1.34x; when enabled it is only used for histograms of
+ * MIN_VECTOR_HISTOGRAM bytes or more, with the scalar gather
+ * Instances hold scratch space, so each encoder gets its own and kernels never allocate
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+abstract class SymbolKernels {
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+    static final String VECTOR_ENGINE = "vector.VectorKernels";
+    static final String KERNELS_PROPERTY = "huffman.kernels";  //set to "vector" to let best() use the vector engine
+    static final int MIN_VECTOR_HISTOGRAM = 1024 * 1024;  //the only size the vector histogram was reliably faster at
+    private static final Constructor<? extends ByteKernels> VECTOR = findVectorKernels();
+
+    /**
+     * Adds the frequency of each byte value in src[off..off+len) to counts
+     *
+     * @param src    Array holding the bytes
+     * @param off    Offset of the first byte
+     * @param len    Number of bytes
+     * @param counts 256 entry frequency table to add to
+     */
+    abstract void histogram(byte[] src, int off, int len, int[] counts);
+
+    /**
+     * Looks up table[b & 0xFF] for each byte b of src[off..off+len), storing the results in out[0..len)
+     *
+     * @param src   Array holding the bytes
+     * @param off   Offset of the first byte
+     * @param len   Number of bytes
+     * @param table 256 entry lookup table, e.g. (code << 8 | length)
+     * @param out   Array receiving one table entry per byte
+     */
+    abstract void gather(byte[] src, int off, int len, int[] table, int[] out);
+
+    /**
+     * Name of this engine, for benchmark output
+     *
+     * @return "scalar", "vector" or a description of which kernels come from which engine
+     */
+    abstract String name();
+
+    /**
+     * Creates the kernels encoders should use
+     *
+     * @return Vector histogram for long inputs with the scalar gather if huffman.kernels=vector and
+     *         jdk.incubator.vector is usable, else the scalar engine
+     */
+    static SymbolKernels best() {
+        if (!"vector".equals(System.getProperty(KERNELS_PROPERTY))) return new ScalarKernels();
+        ByteKernels engine = newVectorEngine();
+        return engine == null ? new ScalarKernels() : new ExternalKernels(engine, MIN_VECTOR_HISTOGRAM, false);
+    }
+
+    /**
+     * Creates the vector engine for every kernel and input size, for benchmarking it against the others
+     *
+     * @return Vector engine, or null if jdk.incubator.vector isn't usable
+     */
+    static SymbolKernels vector() {
+        ByteKernels engine = newVectorEngine();
+        return engine == null ? null : new ExternalKernels(engine, 0, true);
+    }
+
+    /**
+     * Instantiates the vector engine
+     *
+     * @return New VectorKernels, or null if it can't be used here
+     */
+    private static ByteKernels newVectorEngine() {
+        if (VECTOR == null) return null;
+        try {
+            return VECTOR.newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            //vector shape not supported on this CPU, use scalar
+            return null;
+        }
+    }
+
+    /**
+     * Creates the scalar engine regardless of what else is available
+     *
+     * @return Scalar engine
+     */
+    static SymbolKernels scalar() {
+        return new ScalarKernels();
+    }
+
+    /**
+     * Finds the vector engine's constructor, if the module is in the boot layer and the class is on the class path
+     *
+     * @return Constructor of VectorKernels, or null if it can't be used
+     */
+    private static Constructor<? extends ByteKernels> findVectorKernels() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) return null;
+        try {
+            return Class.forName(VECTOR_ENGINE).asSubclass(ByteKernels.class).getConstructor();
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Engine built outside the main tree, used for the kernels and input sizes where it beats the scalar engine
+     */
+    static final class ExternalKernels extends SymbolKernels {
+        private final ByteKernels engine;
+        private final SymbolKernels scalar = new ScalarKernels();
+        private final int minHistogram;  //shorter histograms go to the scalar engine
+        private final boolean gather;    //whether gathers go to the engine
+
+        /**
+         * Constructs ExternalKernels
+         *
+         * @param engine       Engine to use where it pays off
+         * @param minHistogram Shortest input the engine counts
+         * @param gather       true to gather with the engine, false with the scalar engine
+         */
+        ExternalKernels(ByteKernels engine, int minHistogram, boolean gather) {
+            this.engine = engine;
+            this.minHistogram = minHistogram;
+            this.gather = gather;
+        }
+
+        @Override
+        void histogram(byte[] src, int off, int len, int[] counts) {
+            if (len >= minHistogram) engine.histogram(src, off, len, counts);
+            else scalar.histogram(src, off, len, counts);
+        }
+
+        @Override
+        void gather(byte[] src, int off, int len, int[] table, int[] out) {
+            if (gather) engine.gather(src, off, len, table, out);
+            else scalar.gather(src, off, len, table, out);
+        }
+
+        @Override
+        String name() {
+            return gather && minHistogram == 0 ? engine.name() : engine.name() + " histogram, scalar gather";
+        }
+    }
+
+    /**
+     * Plain Java engine
+     * Counts into four interleaved tables so runs of the same byte don't serialize on one counter's load/store
+     */
+    static final class ScalarKernels extends SymbolKernels {
+        private final int[] lanes = new int[3 * 256];  //counts for bytes 1, 2 and 3 of every group of four
+
+        @Override
+        void histogram(byte[] src, int off, int len, int[] counts) {
+            int i = off, end = off + len;
+            for (; i + 4 <= end; i += 4) {
+                counts[src[i] & 0xFF]++;
+                lanes[src[i + 1] & 0xFF]++;
+                lanes[256 + (src[i + 2] & 0xFF)]++;
+                lanes[512 + (src[i + 3] & 0xFF)]++;
+            }
+            for (; i < end; i++) counts[src[i] & 0xFF]++;
+            //fold the extra lanes back in and clear them for the next call
+            for (int s = 0; s < 256; s++) {
+                counts[s] += lanes[s] + lanes[256 + s] + lanes[512 + s];
+                lanes[s] = 0;
+                lanes[256 + s] = 0;
+                lanes[512 + s] = 0;
+            }
+        }
+
+        @Override
+        void gather(byte[] src, int off, int len, int[] table, int[] out) {
+            for (int i = 0; i < len; i++) out[i] = table[src[off + i] & 0xFF];
+        }
+
+        @Override
+        String name() {
+            return "scalar";
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package vector;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * ByteKernels engine on the incubating Vector API
+ * Kept in its own source root (incubator-src), outside the main tree, because it only compiles and runs with the
+ * module added:
+ *     javac --add-modules jdk.incubator.vector -d out *.java vector/*.java incubator-src/vector/*.java
+ *     java --add-modules jdk.incubator.vector -cp out ...
+ * Without it, or without -Dhuffman.kernels=vector, SymbolKernels.best() uses the scalar engine
+ * SymbolKernels decides which of these kernels are worth using for which input sizes
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public final class VectorKernels implements ByteKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = INTS.length();
+
+    private final VectorSpecies<Byte> bytes;  //byte species with one byte per int lane
+    private final IntVector laneBase;         //lane * 256, so each lane counts into its own table
+    private final int[] laneCounts = new int[LANES * 256];
+    private final int[] indices = new int[LANES];
+
+    /**
+     * Constructs VectorKernels
+     *
+     * @throws IllegalArgumentException If the CPU's preferred int vector is too narrow to load bytes into
+     */
+    public VectorKernels() {
+        //a byte vector narrower than 64 bits doesn't exist, so 128 bit CPUs (4 int lanes) fall back to scalar
+        bytes = VectorSpecies.of(byte.class, VectorShape.forBitSize(LANES * 8));
+        laneBase = IntVector.zero(INTS).addIndex(256);
+    }
+
+    /**
+     * Loads LANES bytes from src[i..] as unsigned ints, one per lane
+     */
+    private IntVector load(byte[] src, int i) {
+        return ((IntVector) ByteVector.fromArray(bytes, src, i).convertShape(VectorOperators.B2I, INTS, 0)).and(0xFF);
+    }
+
+    /**
+     * Counts LANES bytes per step: each lane gathers, increments and scatters its own table entry,
+     * so equal bytes in one vector never collide on the same counter
+     * Every call folds LANES * 256 lane counters back into counts, so this only pays off on long inputs
+     */
+    @Override
+    public void histogram(byte[] src, int off, int len, int[] counts) {
+        int i = off, end = off + len;
+        for (; i + LANES <= end; i += LANES) {
+            load(src, i).add(laneBase).intoArray(indices, 0);
+            IntVector.fromArray(INTS, laneCounts, 0, indices, 0).add(1).intoArray(laneCounts, 0, indices, 0);
+        }
+        for (; i < end; i++) counts[src[i] & 0xFF]++;
+        //fold the lane tables into counts and clear them for the next call
+        for (int lane = 0; lane < LANES; lane++) {
+            int base = lane * 256;
+            for (int s = 0; s < 256; s++) {
+                counts[s] += laneCounts[base + s];
+                laneCounts[base + s] = 0;
+            }
+        }
+    }
+
+    /**
+     * Looks up LANES table entries per step with a single gather
+     */
+    @Override
+    public void gather(byte[] src, int off, int len, int[] table, int[] out) {
+        int i = 0;
+        for (; i + LANES <= len; i += LANES) {
+            load(src, off + i).intoArray(indices, 0);
+            IntVector.fromArray(INTS, table, 0, indices, 0).intoArray(out, i);
+        }
+        for (; i < len; i++) out[i] = table[src[off + i] & 0xFF];
+    }
+
+    @Override
+    public String name() {
+        return "vector";
+    }
+}
@@ -0,0 +1,38 @@
+package vector;
+
+/**
+ * Service interface for optional SymbolKernels engines built outside the main source tree
+ * SymbolKernels loads implementations (e.g. incubator-src/vector/VectorKernels.java) reflectively and wraps them,
+ * so this interface is the only part of package vector the main tree compiles against
+ *
+ * @author Logan Chang, CS10, PS3, 20F
+ */
+public interface ByteKernels {
+    /**
+     * Adds the frequency of each byte value in src[off..off+len) to counts
+     *
+     * @param src    Array holding the bytes
+     * @param off    Offset of the first byte
+     * @param len    Number of bytes
+     * @param counts 256 entry frequency table to add to
+     */
+    void histogram(byte[] src, int off, int len, int[] counts);
+
+    /**
+     * Looks up table[b & 0xFF] for each byte b of src[off..off+len), storing the results in out[0..len)
+     *
+     * @param src   Array holding the bytes
+     * @param off   Offset of the first byte
+     * @param len   Number of bytes
+     * @param table 256 entry lookup table, e.g. (code << 8 | length)
+     * @param out   Array receiving one table entry per byte
+     */
+    void gather(byte[] src, int off, int len, int[] table, int[] out);
+
+    /**
+     * Name of this engine, for benchmark output
+     *
+     * @return Short engine name
+     */
+    String name();
+}